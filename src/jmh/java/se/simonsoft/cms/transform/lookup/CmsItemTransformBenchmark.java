@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.lookup;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.simonsoft.cms.reporting.response.CmsItemReporting;
+
+/**
+ * Content access of the extracted Tika XHTML, the content is non-ASCII to include multi-byte encoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CmsItemTransformBenchmark {
+	
+	@Param({"100", "10000"})
+	public int paragraphs;
+	
+	private CmsItemReporting reportingItem;
+	private String contents;
+	
+	@Setup
+	public void setup() {
+		
+		StringBuilder sb = new StringBuilder("<html xmlns=\"http://www.w3.org/1999/xhtml\"><body>");
+		for (int i = 0; i < paragraphs; i++) {
+			sb.append("<p>Paragraph ").append(i).append(" Åäö € 中文</p>");
+		}
+		sb.append("</body></html>");
+		contents = sb.toString();
+		
+		Map<String, Object> meta = new HashMap<>();
+		meta.put(CmsItemTransform.FIELD, contents);
+		reportingItem = mock(CmsItemReporting.class);
+		when(reportingItem.getMeta()).thenReturn(meta);
+	}
+	
+	@Benchmark
+	public long getFilesize() {
+		// New instance, the filesize is calculated once per item.
+		return new CmsItemTransform(reportingItem).getFilesize();
+	}
+	
+	@Benchmark
+	public void getContents() {
+		new CmsItemTransform(reportingItem).getContents(OutputStream.nullOutputStream());
+	}
+	
+	@Benchmark
+	public long getContentsReader() throws IOException {
+		long count = 0;
+		char[] buffer = new char[8192];
+		try (Reader reader = new CmsItemTransform(reportingItem).getContentsReader()) {
+			int len;
+			while ((len = reader.read(buffer)) != -1) {
+				count += len;
+			}
+		}
+		return count;
+	}
+	
+	@Benchmark
+	public byte[] getBytesBaseline() {
+		// Full copy, as the contents were encoded before streaming.
+		return contents.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltExecutable;
+
+/**
+ * Result document serialization, the output.xsl second pass ('serializer' param 'xsl') compared to the default serializer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformOutputBenchmark {
+	
+	@Param({"100", "10000"})
+	public int paragraphs;
+	
+	private Processor processor;
+	private XsltExecutable outputXsl;
+	private XdmNode document;
+	
+	@Setup
+	public void setup() throws SaxonApiException {
+		
+		processor = new Processor(false);
+		outputXsl = processor.newXsltCompiler().compile(new StreamSource(TransformOutputBenchmark.class.getClassLoader().getResourceAsStream(TransformServiceXsl.OUTPUT_TRANSFORM)));
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append("<section xmlns:cms=\"").append(TransformOutputSerializer.CMS_NAMESPACE).append("\"");
+		sb.append(" cms:doctype-public=\"-//Simonsoft//DTD Section//EN\" cms:doctype-system=\"section.dtd\">");
+		sb.append("<title>Section</title>");
+		for (int i = 0; i < paragraphs; i++) {
+			sb.append("<p id=\"p").append(i).append("\">Paragraph <b>").append(i).append("</b> café</p>");
+		}
+		sb.append("</section>");
+		document = processor.newDocumentBuilder().build(new StreamSource(new StringReader(sb.toString())));
+	}
+	
+	@Benchmark
+	public byte[] outputXsl() throws SaxonApiException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		outputXsl.load30().applyTemplates(document, processor.newSerializer(out));
+		return out.toByteArray();
+	}
+	
+	@Benchmark
+	public byte[] outputSerializer() throws SaxonApiException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TransformOutputSerializer.serialize(processor, document, out);
+		return out.toByteArray();
+	}
+}
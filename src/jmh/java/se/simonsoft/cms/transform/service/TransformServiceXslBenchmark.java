@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.RepoRevision;
+import se.simonsoft.cms.item.commit.CmsPatchset;
+import se.simonsoft.cms.item.commit.FileAdd;
+
+/**
+ * Helpers called per output and per message in TransformServiceXsl.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransformServiceXslBenchmark {
+	
+	private static final CmsRepository REPOSITORY = new CmsRepository("http://localhost/svn/repo1");
+	private static final CmsItemPath OUTPUT = new CmsItemPath("/transformed");
+	
+	@Param({"100", "5000"})
+	public int size;
+	
+	private byte[] contentEmpty;
+	private byte[] contentDocument;
+	private List<String> messages;
+	private List<CmsItemPath> outputs;
+	
+	@Setup
+	public void setup() {
+		
+		contentEmpty = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes(StandardCharsets.UTF_8);
+		StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<doc>");
+		for (int i = 0; i < size; i++) {
+			sb.append("<p>Paragraph ").append(i).append("</p>");
+		}
+		sb.append("</doc>");
+		contentDocument = sb.toString().getBytes(StandardCharsets.UTF_8);
+		
+		messages = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			messages.add("Message from xsl:message number " + i);
+		}
+		
+		// Ten outputs per folder, similar to a folder of sections.
+		outputs = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			outputs.add(new CmsItemPath("/transformed/folder" + (i / 10) + "/section" + i + ".xml"));
+		}
+	}
+	
+	@Benchmark
+	public boolean inputStreamNotEmptyDocument() throws IOException {
+		return isNotEmpty(contentDocument);
+	}
+	
+	@Benchmark
+	public boolean inputStreamNotEmptyDeclaration() throws IOException {
+		return isNotEmpty(contentEmpty);
+	}
+	
+	@Benchmark
+	public String completeMessageString() {
+		TransformMessages capture = new TransformMessages(2000);
+		capture.addAll(messages);
+		return TransformServiceXsl.getCompleteMessageString("Transform comment", capture.getMessages(), capture.getOverflow());
+	}
+	
+	@Benchmark
+	public CmsPatchset addFolderExists() {
+		
+		CmsPatchset patchset = new CmsPatchset(REPOSITORY, new RepoRevision(1, null));
+		Set<String> folders = new HashSet<>();
+		for (CmsItemPath path: outputs) {
+			TransformServiceXsl.addFolderExists(patchset, folders, OUTPUT, path.getParent());
+			patchset.add(new FileAdd(path, new ByteArrayInputStream(contentEmpty)));
+		}
+		return patchset;
+	}
+	
+	private static boolean isNotEmpty(byte[] content) throws IOException {
+		try {
+			InputStream in = TransformServiceXsl.getInputStreamNotEmpty(new ByteArrayInputStream(content));
+			return in != null;
+		} catch (TransformServiceXsl.EmptyStreamException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.command.CommandRuntimeException;
+import se.simonsoft.cms.item.command.ExternalCommandHandler;
+import se.simonsoft.cms.transform.config.databind.TransformItemsConfig;
+import se.simonsoft.cms.transform.service.TransformService;
+
+public class TransformItemsCommandHandler implements ExternalCommandHandler<TransformItemsConfig> {
+
+	private final Logger logger = LoggerFactory.getLogger(TransformItemsCommandHandler.class);
+	
+	private final Map<CmsRepository, TransformService> transformServiceMap;
+	
+	@Inject
+	public TransformItemsCommandHandler(Map<CmsRepository, TransformService> transformServiceMap) {
+		this.transformServiceMap = transformServiceMap;
+	}
+	
+	@Override
+	public Class<TransformItemsConfig> getArgumentsClass() {
+		return TransformItemsConfig.class;
+	}
+	
+	@Override
+	public String handleExternalCommand(CmsItemId folder, TransformItemsConfig arguments) {
+		
+		if (arguments == null || arguments.getOptions() == null) {
+			throw new CommandRuntimeException("BadRequest", "TransformConfig / TransformConfigOptions must not be null.");
+		}
+		if (!"xsl".equals(arguments.getOptions().getType())) {
+			throw new CommandRuntimeException("BadRequest", "Transform is not a supported type: " + arguments.getOptions().getType());
+		}
+		if (folder.getRelPath() == null || arguments.getItems() == null || arguments.getItems().isEmpty()) {
+			throw new CommandRuntimeException("BadRequest", "Transform of items requires a folder and a list of item names.");
+		}
+		
+		List<CmsItemId> items = new ArrayList<>(arguments.getItems().size());
+		for (String name: arguments.getItems()) {
+			if (name == null || name.isEmpty() || name.contains("/")) {
+				throw new CommandRuntimeException("BadRequest", "Invalid item name: " + name);
+			}
+			CmsItemPath path = new CmsItemPath(folder.getRelPath().getPath() + "/" + name);
+			items.add(folder.getRepository().getItemId(path, folder.getPegRev()));
+		}
+		
+		TransformService transformService = this.transformServiceMap.get(folder.getRepository());
+		try {
+			transformService.transform(items, arguments);
+			logger.debug("Transformed {} items in '{}' with config: '{}'", items.size(), folder, arguments.getName());
+		} catch (Exception e) {
+			logger.error("Transform failed '{}': {}", arguments, e.getMessage(), e);
+			throw new CommandRuntimeException("TransformFailed", e.getMessage());
+		}
+		return null; // Must return JSON.
+	}
+
+}
@@ -23,5 +23,11 @@ import se.simonsoft.cms.transform.config.databind.TransformConfig;
 public interface TransformConfiguration {
 	
 	public Map<String, TransformConfig> getConfiguration(CmsItemId itemId);
+	
+	/**
+	 * @param folderId
+	 * @return the configurations that apply to items in the folder
+	 */
+	public Map<String, TransformConfig> getConfigurationFolder(CmsItemId folderId);
 
 }
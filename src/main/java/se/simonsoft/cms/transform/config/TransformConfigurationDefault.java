@@ -16,8 +16,10 @@
 package se.simonsoft.cms.transform.config;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -27,11 +29,14 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectReader;
 
+import se.simonsoft.cms.item.CmsItem;
 import se.simonsoft.cms.item.CmsItemId;
 import se.simonsoft.cms.item.CmsItemKind;
 import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.CmsRepository;
 import se.simonsoft.cms.item.config.CmsConfigOption;
 import se.simonsoft.cms.item.config.CmsResourceContext;
+import se.simonsoft.cms.item.info.CmsItemLookup;
 import se.simonsoft.cms.item.info.CmsRepositoryLookup;
 import se.simonsoft.cms.transform.config.databind.TransformConfig;
 
@@ -40,17 +45,38 @@ public class TransformConfigurationDefault implements TransformConfiguration {
 	
 	private static final Logger logger = LoggerFactory.getLogger(TransformConfigurationDefault.class);
 	private final CmsRepositoryLookup repositoryLookup;
+	private final Map<CmsRepository, CmsItemLookup> itemLookup;
 	private final ObjectReader reader;
 	
 	private static final String TRANSFORM_CONFIG_NAMESPACE = "cmsconfig-transform";
+	
+	// Number of folder contexts (per folder revision) and number of distinct config values kept.
+	private static final int CACHE_MAX_ENTRIES = 1000;
+	
+	// Parsed configs per folder and revision changed of the folder and its parents, empty maps for folders without transform config.
+	private final Map<String, Map<String, TransformConfig>> folderCache = createCache();
+	// Parsed configs per JSON value, shared across folders and revisions as long as the config is unchanged.
+	private final Map<String, TransformConfig> parseCache = createCache();
 
+	/**
+	 * Caches the configs per event revision, without lookup of the folder revisions.
+	 */
+	public TransformConfigurationDefault(
+			CmsRepositoryLookup repositoryLookup,
+			ObjectReader reader
+			) {
+		this(repositoryLookup, Collections.<CmsRepository, CmsItemLookup>emptyMap(), reader);
+	}
+	
 	@Inject
 	public TransformConfigurationDefault(
 			@Named("global") CmsRepositoryLookup repositoryLookup,
+			Map<CmsRepository, CmsItemLookup> itemLookup,
 			ObjectReader reader
 			) {
 		
 		this.repositoryLookup = repositoryLookup;
+		this.itemLookup = itemLookup;
 		this.reader = reader.forType(TransformConfig.class);
 	}
 
@@ -61,16 +87,61 @@ public class TransformConfigurationDefault implements TransformConfiguration {
 			throw new IllegalArgumentException("Getting configurations requires a valid CmsItemId");
 		}
 		
-		CmsResourceContext context = getConfigurationParentFolder(itemId);
-		return deserializeConfig(context);
-	}
-
-	private CmsResourceContext getConfigurationParentFolder(CmsItemId itemId) {
-
 		// Getting config for the parent, which is always a Folder.
-		CmsItemPath relPath = itemId.getRelPath().getParent();
-		logger.debug("Configuration context: {} - ({})", relPath, itemId);
+		return getConfigurationCached(itemId.getRelPath().getParent(), itemId);
+	}
+	
+	@Override
+	public Map<String, TransformConfig> getConfigurationFolder(CmsItemId folderId) {
+		
+		if (folderId == null) {
+			throw new IllegalArgumentException("Getting configurations requires a valid CmsItemId");
+		}
+		
+		return getConfigurationCached(folderId.getRelPath(), folderId);
+	}
+	
+	private Map<String, TransformConfig> getConfigurationCached(CmsItemPath relPath, CmsItemId itemId) {
+		
 		CmsItemId folder = itemId.getRepository().getItemId(relPath, null); //Always getting config from HEAD.
+		if (itemId.getPegRev() == null) {
+			return copyConfig(deserializeConfig(getConfigurationFolder(folder, itemId)));
+		}
+		
+		// Each folder context is looked up once per change of the folder or a parent folder.
+		String key = getCacheKey(folder, itemId);
+		Map<String, TransformConfig> configs = folderCache.get(key);
+		if (configs == null) {
+			configs = Collections.unmodifiableMap(deserializeConfig(getConfigurationFolder(folder, itemId)));
+			folderCache.put(key, configs);
+		} else {
+			logger.trace("Configuration context cached: {}", key);
+		}
+		return copyConfig(configs);
+	}
+	
+	/**
+	 * The config is inherited from parent folders, the key includes the revision changed of each folder below the repository root.
+	 * Without an item lookup for the repository, the key is the event revision.
+	 */
+	private String getCacheKey(CmsItemId folder, CmsItemId itemId) {
+		
+		CmsItemLookup lookup = itemLookup.get(folder.getRepository());
+		if (lookup == null) {
+			return folder.withPegRev(itemId.getPegRev()).getLogicalId();
+		}
+		
+		StringBuilder key = new StringBuilder(folder.getLogicalId());
+		for (CmsItemPath path = folder.getRelPath(); path != null; path = path.getParent()) {
+			CmsItem item = lookup.getItem(folder.getRepository().getItemId(path, null));
+			key.append('@').append(item.getRevisionChanged().getNumber());
+		}
+		return key.toString();
+	}
+	
+	private CmsResourceContext getConfigurationFolder(CmsItemId folder, CmsItemId itemId) {
+		
+		logger.debug("Configuration context: {} - ({})", folder.getRelPath(), itemId);
 		CmsResourceContext context = repositoryLookup.getConfig(folder, CmsItemKind.Folder);
 		return context;
 	}
@@ -84,7 +155,12 @@ public class TransformConfigurationDefault implements TransformConfiguration {
 			final String name = o.getNamespace();
 			if (name.startsWith(TRANSFORM_CONFIG_NAMESPACE)) {
 				try {
-					TransformConfig config = reader.readValue(o.getValueString());
+					String value = o.getValueString();
+					TransformConfig config = parseCache.get(value);
+					if (config == null) {
+						config = reader.readValue(value);
+						parseCache.put(value, config);
+					}
 					configs.put(o.getKey(), config);
 				} catch (IOException e) {
 					logger.error("Could not deserialize config: {} to new TransformConfiguration", name.concat(":" + o.getKey()));
@@ -96,4 +172,28 @@ public class TransformConfigurationDefault implements TransformConfiguration {
 		logger.debug("Context had {} valid {} objects", configs.size(), TRANSFORM_CONFIG_NAMESPACE);
 		return configs;
 	}
+	
+	/**
+	 * The cached instances are shared, returning copies since callers set the name.
+	 */
+	private static Map<String, TransformConfig> copyConfig(Map<String, TransformConfig> configs) {
+		
+		Map<String, TransformConfig> result = new LinkedHashMap<>();
+		for (Entry<String, TransformConfig> e: configs.entrySet()) {
+			result.put(e.getKey(), new TransformConfig(e.getValue()));
+		}
+		return result;
+	}
+	
+	private static <V> Map<String, V> createCache() {
+		
+		return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Entry<String, V> eldest) {
+				return size() > CACHE_MAX_ENTRIES;
+			}
+		});
+	}
 }
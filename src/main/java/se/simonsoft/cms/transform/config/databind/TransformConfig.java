@@ -26,6 +26,18 @@ public class TransformConfig {
 	private TransformConfigOptions options;
 	public String name;
 	
+	public TransformConfig() {
+	}
+	
+	/**
+	 * Copy constructor, the options are copied as well.
+	 */
+	public TransformConfig(TransformConfig config) {
+		this.active = config.active;
+		this.options = (config.options != null) ? new TransformConfigOptions(config.options) : null;
+		this.name = config.name;
+	}
+	
 	public boolean isActive() {
 		return active;
 	}
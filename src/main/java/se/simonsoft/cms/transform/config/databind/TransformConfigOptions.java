@@ -21,8 +21,37 @@ import java.util.Map;
 public class TransformConfigOptions {
 	
 	private String type;
+	
+	/*
+	 * Params:
+	 * - 'stylesheet': Repository path (starting with slash) or name of a built-in stylesheet.
+	 * - 'output': Output folder, defaults to the parent folder of the item. Empty string means repository root.
+	 * - 'overwrite': Must be true in order to allow overwriting existing items.
+	 * - 'comment': History comment for the commit.
+	 * - 'PropertiesSuppress': Suppress the abx:Transform* properties on the output.
+	 * - 'parallelism': Number of items transformed concurrently for folder transforms (default 1).
+	 * - 'spool': Serialize result documents when closed, spooled to temporary files when large, implies 'serializer' native (default false).
+	 * - 'serializer': Set to 'native' in order to serialize result documents without the output.xsl transform (default 'xsl').
+	 * - 'preflight': Without 'overwrite', check existing principal output before transforming: 'fail', 'skip' or 'false' (default).
+	 * - 'incremental': Record source and stylesheet revision (highest of included / imported repository modules) on the output, skip items where the principal output is current (default false).
+	 * - 'skipunchanged': Leave existing items with identical content out of the commit, requires 'overwrite' (default false).
+	 * - 'latelock': Lock existing items just before the commit, not while transforming (default false).
+	 * - 'chunkitems': Commit every N items, each chunk is a separate commit with its own locks (default a single commit).
+	 * - 'chunkbytes': Commit when the source items of a chunk exceed N bytes, can be combined with 'chunkitems'.
+	 * - 'debounce': Seconds to delay the transform of a changed item, repeated changes start a single transform of the latest revision (requires a configured userid).
+	 * - 'batch': Seconds to collect the changed items of a revision, items in the same folder are transformed in a single commit (requires a configured userid).
+	 * - 'streaming': XSLT 3.0 streaming of the source, requires Saxon-EE and a repository stylesheet with a streamable default mode, implies 'spool' (default false).
+	 */
 	private Map <String, String> params = new HashMap<>();
 	
+	public TransformConfigOptions() {
+	}
+	
+	public TransformConfigOptions(TransformConfigOptions options) {
+		this.type = options.type;
+		this.params = (options.params != null) ? new HashMap<>(options.params) : null;
+	}
+	
 	public String getType() {
 		return type;
 	}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.config.databind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Transform config for a batch of items in the same folder, the folder is the itemId of the command.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true) // Allow future changes.
+public class TransformItemsConfig extends TransformConfig {
+	
+	private List<String> items = new ArrayList<>(); // Item names within the folder.
+	
+	public TransformItemsConfig() {
+	}
+	
+	public TransformItemsConfig(TransformConfig config) {
+		super(config);
+	}
+	
+	public List<String> getItems() {
+		return items;
+	}
+	
+	public void setItems(List<String> items) {
+		this.items = items;
+	}
+	
+}
@@ -15,11 +15,13 @@
  */
 package se.simonsoft.cms.transform.event;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -28,8 +30,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemId;
 import se.simonsoft.cms.item.CmsItemKind;
-import se.simonsoft.cms.item.CmsItemPath;
 import se.simonsoft.cms.item.CmsRepository;
 import se.simonsoft.cms.item.events.ItemChangedEventListener;
 import se.simonsoft.cms.item.info.CmsItemLookup;
@@ -39,6 +41,7 @@ import se.simonsoft.cms.item.workflow.WorkflowExecutor;
 import se.simonsoft.cms.item.workflow.WorkflowItemInput;
 import se.simonsoft.cms.transform.config.TransformConfiguration;
 import se.simonsoft.cms.transform.config.databind.TransformConfig;
+import se.simonsoft.cms.transform.config.databind.TransformItemsConfig;
 
 public class TransformItemChangedEventListener implements ItemChangedEventListener {
 
@@ -48,8 +51,14 @@ public class TransformItemChangedEventListener implements ItemChangedEventListen
 	// e.g. when normal users upload files but should not be allowed to modify transform result.
 	private final String userId; 
 	private final WorkflowExecutor<WorkflowItemInput> workflowExecutor;
+	private final Map<CmsRepository, TransformPathsRevision> transformPaths = new ConcurrentHashMap<>();
+	// Coalesced executions, per item and config name.
+	private final ConcurrentHashMap<String, TransformItemWorkflowInput> pending = new ConcurrentHashMap<>();
+	// Batched executions, per folder at revision and config name.
+	private final ConcurrentHashMap<String, TransformItemsWorkflowInput> batches = new ConcurrentHashMap<>();
+	private ScheduledExecutorService scheduler = null;
+	private boolean shutdown = false;
 
-	private static final String TRANSFORM_PATHS_WHITE_LIST = "cmsconfig:TransformPaths";
 	private static final String TRANSFORM_NAME_PROP_KEY = "abx:TransformName";
 
 	private static final Logger logger = LoggerFactory.getLogger(TransformItemChangedEventListener.class);
@@ -108,29 +117,33 @@ public class TransformItemChangedEventListener implements ItemChangedEventListen
 	
 	private boolean isWithinTransformPath(CmsItem item) {
 		
-		CmsRepository repository = item.getId().getRepository();
-		CmsItem repoItem = itemLookup.get(repository).getItem(repository.getItemId());
-		
-		CmsItemProperties properties = repoItem.getProperties();
-		String pathsString = properties.getString(TRANSFORM_PATHS_WHITE_LIST);
+		TransformPathsMatcher matcher = getTransformPaths(item.getId().getRepository(), item.getId().getPegRev());
+		return matcher.matches(item.getId().getRelPath());
+	}
+	
+	/**
+	 * The root item is read once per revision, the whitelist is compiled again only when the property changed.
+	 */
+	private TransformPathsMatcher getTransformPaths(CmsRepository repository, Long revision) {
 		
-		List<String> whiteListedPaths = new ArrayList<>();
-		if (pathsString != null && !pathsString.trim().isEmpty()) {
-			String[] split = pathsString.trim().split("\\r?\\n"); //removing surrounding white space and the split on new lines.
-			whiteListedPaths.addAll(Arrays.asList(split));
-			logger.debug("Number of white listed paths: {}", whiteListedPaths.size());
+		TransformPathsRevision cached = transformPaths.get(repository);
+		if (cached != null && cached.revision.equals(revision)) {
+			return cached.matcher;
 		}
 		
-		boolean withinWhiteList = false;
-		for (String p: whiteListedPaths) {
-			final String trimmedPath = p.trim();
-			CmsItemPath whiteListedPath = new CmsItemPath(trimmedPath);
-			if (whiteListedPath.isAncestorOf(item.getId().getRelPath())) {
-				withinWhiteList = true;
-			}
-		}
+		CmsItem repoItem = itemLookup.get(repository).getItem(repository.getItemId());
+		CmsItemProperties properties = repoItem.getProperties();
+		String pathsString = properties.getString(TransformPathsMatcher.TRANSFORM_PATHS_WHITE_LIST);
 		
-		return withinWhiteList;
+		TransformPathsMatcher matcher;
+		if (cached != null && Objects.equals(cached.matcher.getPathsString(), pathsString)) {
+			matcher = cached.matcher;
+		} else {
+			matcher = new TransformPathsMatcher(pathsString);
+			logger.debug("Compiled white listed paths at revision {}: {}", revision, pathsString);
+		}
+		transformPaths.put(repository, new TransformPathsRevision(revision, matcher));
+		return matcher;
 	}
 	
 	private void doTransformWorkEnqueue(CmsItem item, TransformConfig config) {
@@ -139,7 +152,28 @@ public class TransformItemChangedEventListener implements ItemChangedEventListen
 		// Otherwise, the WorkflowExecutor will set current user.
 		if (this.userId != null && !this.userId.trim().isEmpty()) {
 			job.setUserId(userId);
+			
+			// Batching and coalescing requires the userId override, the current user is not available when starting later.
+			if (isShutdown()) {
+				logger.warn("Transform delay not available after shutdown, starting immediately: {}", job.getItemId());
+				doTransformWorkStart(job);
+				return;
+			}
+			long batch = getParamSeconds(config, "batch");
+			if (batch > 0) {
+				doTransformWorkBatch(job, batch);
+				return;
+			}
+			long debounce = getParamSeconds(config, "debounce");
+			if (debounce > 0) {
+				doTransformWorkCoalesce(job, debounce);
+				return;
+			}
 		}
+		doTransformWorkStart(job);
+	}
+	
+	private void doTransformWorkStart(TransformItemWorkflowInput job) {
 		try {
 			workflowExecutor.startExecution(job);
 		} catch (WorkflowExecutionException e) {
@@ -147,5 +181,174 @@ public class TransformItemChangedEventListener implements ItemChangedEventListen
 			throw new RuntimeException("Work execution failed: " + e.getMessage(), e);
 		}
 	}
+	
+	/**
+	 * Keeps the latest revision per item and config, started when the window has passed.
+	 * Events for an item and config that is already pending are not scheduled again.
+	 */
+	private void doTransformWorkCoalesce(TransformItemWorkflowInput job, long debounce) {
+		
+		final String key = job.getItemId().withPegRev(null).getLogicalId() + "|" + job.getOptions().getName();
+		final boolean[] scheduled = new boolean[] {false};
+		pending.compute(key, (k, existing) -> {
+			if (existing == null) {
+				scheduled[0] = true;
+				return job;
+			}
+			if (existing.getItemId().getPegRev() < job.getItemId().getPegRev()) {
+				return job;
+			}
+			return existing;
+		});
+		
+		if (scheduled[0]) {
+			logger.debug("Transform of '{}' delayed {} seconds: {}", key, debounce, job.getItemId());
+			getScheduler().schedule(() -> {
+				TransformItemWorkflowInput latest = pending.remove(key);
+				if (latest != null) {
+					try {
+						doTransformWorkStart(latest);
+					} catch (RuntimeException e) {
+						logger.error("Delayed execution failed for itemId '{}': {}", latest.getItemId(), e.getMessage(), e);
+					}
+				}
+			}, debounce, TimeUnit.SECONDS);
+		} else {
+			logger.debug("Transform of '{}' already pending, coalesced: {}", key, job.getItemId());
+		}
+	}
+	
+	/**
+	 * Collects the items of a revision, per parent folder and config, into a single execution.
+	 */
+	private void doTransformWorkBatch(TransformItemWorkflowInput job, long batch) {
+		
+		final CmsItemId itemId = job.getItemId();
+		final CmsItemId folderId = itemId.getRepository().getItemId(itemId.getRelPath().getParent(), itemId.getPegRev());
+		final String key = folderId.getLogicalId() + "|" + job.getOptions().getName();
+		final boolean[] scheduled = new boolean[] {false};
+		batches.compute(key, (k, existing) -> {
+			TransformItemsWorkflowInput items = existing;
+			if (items == null) {
+				scheduled[0] = true;
+				items = new TransformItemsWorkflowInput(folderId, new TransformItemsConfig(job.getOptions()));
+				items.setUserId(job.getUserId());
+			}
+			items.getOptions().getItems().add(itemId.getRelPath().getName());
+			return items;
+		});
+		
+		if (scheduled[0]) {
+			logger.debug("Transform of '{}' batched for {} seconds", key, batch);
+			getScheduler().schedule(() -> {
+				TransformItemsWorkflowInput items = batches.remove(key);
+				if (items == null) {
+					return;
+				}
+				try {
+					if (items.getOptions().getItems().size() == 1) {
+						doTransformWorkStart(job);
+					} else {
+						logger.info("Transform of {} items batched: {}", items.getOptions().getItems().size(), key);
+						workflowExecutor.startExecution(items);
+					}
+				} catch (WorkflowExecutionException | RuntimeException e) {
+					logger.error("Batched execution failed for folder '{}': {}", folderId, e.getMessage(), e);
+				}
+			}, batch, TimeUnit.SECONDS);
+		}
+	}
+	
+	private long getParamSeconds(TransformConfig config, String param) {
+		
+		String value = config.getOptions() != null ? config.getOptions().getParams().get(param) : null;
+		if (value == null || value.trim().isEmpty()) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("The '{}' parameter must be a number of seconds, starting immediately: {}", param, value);
+			return 0;
+		}
+	}
+	
+	/**
+	 * Starts the pending and batched executions immediately, then stops the scheduler of delayed executions.
+	 * Events received after shutdown are started immediately.
+	 * 
+	 * Not called by the listener itself, must be called by the owner of the listener (e.g. the module or 
+	 * context listener that registered it) when the application stops, otherwise the delayed executions are lost.
+	 */
+	public void shutdown() {
+		
+		synchronized (this) {
+			shutdown = true;
+		}
+		
+		// The scheduled tasks remove the entry before starting, each execution is started once.
+		for (String key: pending.keySet()) {
+			TransformItemWorkflowInput job = pending.remove(key);
+			if (job != null) {
+				logger.info("Transform started at shutdown, pending for '{}': {}", key, job.getItemId());
+				try {
+					workflowExecutor.startExecution(job);
+				} catch (WorkflowExecutionException | RuntimeException e) {
+					logger.error("Execution at shutdown failed for itemId '{}': {}", job.getItemId(), e.getMessage(), e);
+				}
+			}
+		}
+		for (String key: batches.keySet()) {
+			TransformItemsWorkflowInput items = batches.remove(key);
+			if (items != null) {
+				logger.info("Transform started at shutdown, batched for '{}': {}", key, items.getOptions().getItems());
+				try {
+					workflowExecutor.startExecution(items);
+				} catch (WorkflowExecutionException | RuntimeException e) {
+					logger.error("Batched execution at shutdown failed for '{}': {}", key, e.getMessage(), e);
+				}
+			}
+		}
+		
+		final ScheduledExecutorService s;
+		synchronized (this) {
+			s = scheduler;
+			scheduler = null;
+		}
+		if (s != null) {
+			s.shutdownNow();
+		}
+	}
+	
+	private synchronized boolean isShutdown() {
+		return shutdown;
+	}
+	
+	private synchronized ScheduledExecutorService getScheduler() {
+		
+		if (shutdown) {
+			throw new IllegalStateException("Transform event listener is shut down.");
+		}
+		
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "transform-debounce");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return scheduler;
+	}
+	
+	private static class TransformPathsRevision {
+		
+		private final Long revision;
+		private final TransformPathsMatcher matcher;
+		
+		TransformPathsRevision(Long revision, TransformPathsMatcher matcher) {
+			this.revision = revision;
+			this.matcher = matcher;
+		}
+	}
 
 }
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemPath;
+
+/**
+ * Compiled form of the cmsconfig:TransformPaths whitelist, a trie of path segments.
+ * Matching walks the segments of the item path without allocating.
+ */
+public class TransformPathsMatcher {
+	
+	public static final String TRANSFORM_PATHS_WHITE_LIST = "cmsconfig:TransformPaths";
+	
+	private final String pathsString;
+	private final Node root = new Node(null);
+	
+	/**
+	 * @param repoItem the repository root item, with properties
+	 */
+	public static TransformPathsMatcher getTransformPaths(CmsItem repoItem) {
+		return new TransformPathsMatcher(repoItem.getProperties().getString(TRANSFORM_PATHS_WHITE_LIST));
+	}
+	
+	public TransformPathsMatcher(String pathsString) {
+		
+		this.pathsString = pathsString;
+		if (pathsString != null && !pathsString.trim().isEmpty()) {
+			String[] split = pathsString.trim().split("\\r?\\n"); //removing surrounding white space and the split on new lines.
+			for (String p: split) {
+				add(new CmsItemPath(p.trim()));
+			}
+		}
+	}
+	
+	public String getPathsString() {
+		return pathsString;
+	}
+	
+	/**
+	 * @return the whitelisted folders, excluding folders within another whitelisted folder
+	 */
+	public List<CmsItemPath> getPaths() {
+		
+		List<CmsItemPath> result = new ArrayList<>();
+		addPaths(root, "", result);
+		return result;
+	}
+	
+	private void addPaths(Node node, String path, List<CmsItemPath> result) {
+		
+		if (node.terminal && node != root) {
+			result.add(new CmsItemPath(path));
+			return;
+		}
+		for (Node child: node.children) {
+			addPaths(child, path + "/" + child.name, result);
+		}
+	}
+	
+	private void add(CmsItemPath path) {
+		
+		String s = path.getPath();
+		Node node = root;
+		int start = 1;
+		while (start < s.length()) {
+			int end = s.indexOf('/', start);
+			if (end < 0) {
+				end = s.length();
+			}
+			Node child = node.getChild(s, start, end);
+			if (child == null) {
+				child = node.addChild(s.substring(start, end));
+			}
+			node = child;
+			start = end + 1;
+		}
+		node.terminal = true;
+	}
+	
+	/**
+	 * @param path the item path
+	 * @return true if a whitelisted path is an ancestor of the path, same as {@link CmsItemPath#isAncestorOf(CmsItemPath)}
+	 */
+	public boolean matches(CmsItemPath path) {
+		
+		String s = path.getPath();
+		Node node = root;
+		int start = 1;
+		while (start < s.length()) {
+			// Only strict ancestors, the last segment is never compared.
+			if (node.terminal) {
+				return true;
+			}
+			int end = s.indexOf('/', start);
+			if (end < 0) {
+				return false;
+			}
+			node = node.getChild(s, start, end);
+			if (node == null) {
+				return false;
+			}
+			start = end + 1;
+		}
+		return false;
+	}
+	
+	private static class Node {
+		
+		private static final Node[] NONE = new Node[0];
+		
+		private final String name;
+		private Node[] children = NONE;
+		private boolean terminal = false;
+		
+		Node(String name) {
+			this.name = name;
+		}
+		
+		Node getChild(String path, int start, int end) {
+			int length = end - start;
+			for (Node child: children) {
+				if (child.name.length() == length && path.regionMatches(start, child.name, 0, length)) {
+					return child;
+				}
+			}
+			return null;
+		}
+		
+		Node addChild(String name) {
+			Node child = new Node(name);
+			children = Arrays.copyOf(children, children.length + 1);
+			children[children.length - 1] = child;
+			return child;
+		}
+	}
+
+}
@@ -16,7 +16,11 @@
 package se.simonsoft.cms.transform.lookup;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +35,13 @@ import se.simonsoft.cms.item.properties.CmsItemProperties;
 import se.simonsoft.cms.reporting.CmsItemLookupReporting;
 import se.simonsoft.cms.reporting.response.CmsItemReporting;
 
+/**
+ * Resolves items with cms:class 'tikahtml' to the extracted Tika XHTML, other items are looked up as is.
+ * 
+ * Ids without revision are pinned to the base revision of the transform running on the current thread, see {@link #setRevision(Long)}.
+ * Repeated references to a pinned Tika XHTML item are served from the cache without lookup.
+ * Without a revision set, ids without revision resolve to the revision at the time of the lookup.
+ */
 public class CmsItemLookupTransform implements CmsItemLookup {
 	
 	private static final Logger logger = LoggerFactory.getLogger(CmsItemLookupTransform.class);
@@ -38,16 +49,80 @@ public class CmsItemLookupTransform implements CmsItemLookup {
 	private static String CMS_CLASS_PROPERTY = "cms:class";
 	private static String CLASS = "tikahtml";
 	private static String FIELD = "tf_tikahtml";
+	private static final long CACHE_MAX_SIZE = 64 * 1024 * 1024; // Total UTF-8 length of extracted content, heap usage is higher.
+	private static final int PINNED_MAX_ENTRIES = 10000; // Keys of pinned ids, the content is in the cache.
 	private final CmsItemLookup itemLookup;
 	private final CmsItemLookupReporting itemLookupReporting;
+	private final CmsItemTransformCache cache;
+	// The lookup is shared by concurrent transforms, the base revision is set per thread.
+	private final ThreadLocal<Long> revision = new ThreadLocal<>();
+	// Cache key (revision changed) of Tika XHTML items per id pinned to a base revision.
+	private final Map<String, String> pinned = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > PINNED_MAX_ENTRIES;
+		}
+	});
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
 
 	public CmsItemLookupTransform(CmsItemLookup itemLookup, CmsItemLookupReporting itemLookupReporting) {
+		this(itemLookup, itemLookupReporting, CACHE_MAX_SIZE);
+	}
+	
+	/**
+	 * @param cacheMaxSize max total UTF-8 length (bytes) of cached extracted content, not heap usage, 0 disables the cache
+	 */
+	public CmsItemLookupTransform(CmsItemLookup itemLookup, CmsItemLookupReporting itemLookupReporting, long cacheMaxSize) {
 		this.itemLookup = itemLookup;
 		this.itemLookupReporting = itemLookupReporting;
+		this.cache = new CmsItemTransformCache(cacheMaxSize);
+	}
+	
+	/**
+	 * Pins ids without revision to the base revision of the transform running on the current thread.
+	 * @param baseRevision the base revision, null when the transform is completed
+	 */
+	public void setRevision(Long baseRevision) {
+		if (baseRevision != null) {
+			revision.set(baseRevision);
+		} else {
+			revision.remove();
+		}
 	}
 	
 	@Override
-	public CmsItem getItem(CmsItemId id) throws CmsConnectionException, CmsItemNotFoundException {
+	public CmsItem getItem(CmsItemId itemId) throws CmsConnectionException, CmsItemNotFoundException {
+		
+		final Long baseRevision = revision.get();
+		final String pinnedKey;
+		final CmsItemId id;
+		if (itemId.getPegRev() == null && baseRevision != null) {
+			id = itemId.withPegRev(baseRevision);
+			pinnedKey = id.getLogicalId();
+			String key = pinned.get(pinnedKey);
+			CmsItemTransform cached = (key != null) ? cache.get(key) : null;
+			if (cached != null) {
+				logger.trace("Cached extracted Tika XHTML: {} ({})", key, pinnedKey);
+				cacheHits.incrementAndGet();
+				return cached;
+			}
+		} else {
+			id = itemId;
+			pinnedKey = null;
+		}
+		
+		// Items with revision are immutable, no lookup at all when cached.
+		if (id.getPegRev() != null && pinnedKey == null) {
+			CmsItemTransform cached = cache.get(id.getLogicalId());
+			if (cached != null) {
+				logger.trace("Cached extracted Tika XHTML: {}", id);
+				cacheHits.incrementAndGet();
+				return cached;
+			}
+		}
 		
 		CmsItem item = this.itemLookup.getItem(id);
 		CmsItemProperties properties = item.getProperties();
@@ -58,9 +133,37 @@ public class CmsItemLookupTransform implements CmsItemLookup {
 			return item;
 		}
 		
+		// Items without revision, or pinned to a base revision, are cached with the revision they were changed, making the cache entry immutable.
+		final String key;
+		if (id.getPegRev() != null && pinnedKey == null) {
+			key = id.getLogicalId();
+		} else {
+			key = id.withPegRev(item.getRevisionChanged().getNumber()).getLogicalId();
+			if (pinnedKey != null) {
+				pinned.put(pinnedKey, key);
+			}
+			CmsItemTransform cached = cache.get(key);
+			if (cached != null) {
+				logger.trace("Cached extracted Tika XHTML: {}", key);
+				cacheHits.incrementAndGet();
+				return cached;
+			}
+		}
+		
 		logger.debug("Resolving extracted Tika XHTML: {}", id);
+		cacheMisses.incrementAndGet();
 		CmsItemReporting reportingItem = (CmsItemReporting) this.itemLookupReporting.getItem(id);
-		return new CmsItemTransform(reportingItem);
+		CmsItemTransform result = new CmsItemTransform(reportingItem);
+		cache.put(key, result);
+		return result;
+	}
+	
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+	
+	public long getCacheMisses() {
+		return cacheMisses.get();
 	}
 	
 	private boolean hasClass(CmsItemProperties properties) {
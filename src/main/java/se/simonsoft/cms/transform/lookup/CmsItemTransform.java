@@ -17,9 +17,19 @@ package se.simonsoft.cms.transform.lookup;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +48,10 @@ public class CmsItemTransform extends CmsItemBase {
 
 	public static final String FIELD = "tf_tikahtml";
 	
+	private static final int CONTENTS_BUFFER_SIZE = 8192;
+	
+	private volatile long filesize = -1; // Calculated without encoding the contents.
+	
 
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -69,17 +83,53 @@ public class CmsItemTransform extends CmsItemBase {
 
 	@Override
 	public long getFilesize() {
-		return getContentsAsString().getBytes(StandardCharsets.UTF_8).length;
+		if (filesize < 0) {
+			filesize = getLengthUtf8(getContentsAsString());
+		}
+		return filesize;
 	}
 
 	@Override
 	public void getContents(OutputStream receiver) throws UnsupportedOperationException {
+		// Encoding in chunks, avoids a complete byte[] copy of large extracted content.
+		final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		final CharBuffer in = CharBuffer.wrap(getContentsAsString());
+		final ByteBuffer out = ByteBuffer.allocate(CONTENTS_BUFFER_SIZE);
 		try {
-			receiver.write(getContentsAsString().getBytes(StandardCharsets.UTF_8));
+			CoderResult result;
+			do {
+				result = encoder.encode(in, out, true);
+				if (result.isError()) {
+					result.throwException();
+				}
+				receiver.write(out.array(), 0, out.position());
+				out.clear();
+			} while (result.isOverflow());
+			do {
+				result = encoder.flush(out);
+				receiver.write(out.array(), 0, out.position());
+				out.clear();
+			} while (result.isOverflow());
 		} catch (IOException e) {
 			throw new IllegalStateException("Could not write to given OutputStream, message: " +  e.getMessage());
 		}
 	}
+	
+	/**
+	 * @return reader of the contents, allows parsing without encoding to bytes
+	 */
+	public Reader getContentsReader() {
+		return new StringReader(getContentsAsString());
+	}
+	
+	/**
+	 * @return source of the contents, allows parsing without encoding to bytes
+	 */
+	public Source getContentsSource() {
+		return new StreamSource(getContentsReader(), item.getId().getLogicalId());
+	}
 
 	
 	public String getContentsAsString() {
@@ -94,5 +144,30 @@ public class CmsItemTransform extends CmsItemBase {
 		String contents = (String) meta.get(FIELD);
 		return contents;
 	}
+	
+	/**
+	 * @return length of the contents encoded as UTF-8, unpaired surrogates replaced with a single byte (same as String.getBytes)
+	 */
+	static long getLengthUtf8(CharSequence contents) {
+		
+		final int length = contents.length();
+		long result = 0;
+		for (int i = 0; i < length; i++) {
+			char c = contents.charAt(i);
+			if (c < 0x80) {
+				result += 1;
+			} else if (c < 0x800) {
+				result += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(contents.charAt(i + 1))) {
+				result += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				result += 1;
+			} else {
+				result += 3;
+			}
+		}
+		return result;
+	}
 
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.lookup;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of resolved Tika XHTML items, bounded by the total size of the extracted content.
+ * 
+ * The weight is the UTF-8 length of the content, not the heap usage. 
+ * The content is kept as String, typically 1-2 bytes per char, in addition to the reporting response.
+ * 
+ * Keys must identify an immutable item, i.e. logical id including revision.
+ */
+class CmsItemTransformCache {
+	
+	private final long maxWeight;
+	private final LinkedHashMap<String, CmsItemTransform> items = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight = 0;
+	
+	CmsItemTransformCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+	
+	synchronized CmsItemTransform get(String key) {
+		return items.get(key);
+	}
+	
+	synchronized void put(String key, CmsItemTransform item) {
+		
+		final long itemWeight = item.getFilesize();
+		if (itemWeight > maxWeight) {
+			// Would evict everything else.
+			return;
+		}
+		
+		CmsItemTransform previous = items.put(key, item);
+		if (previous != null) {
+			weight -= previous.getFilesize();
+		}
+		weight += itemWeight;
+		
+		Iterator<Map.Entry<String, CmsItemTransform>> eldest = items.entrySet().iterator();
+		while (weight > maxWeight && eldest.hasNext()) {
+			weight -= eldest.next().getValue().getFilesize();
+			eldest.remove();
+		}
+	}
+	
+	synchronized int size() {
+		return items.size();
+	}
+	
+	synchronized long getWeight() {
+		return weight;
+	}
+
+}
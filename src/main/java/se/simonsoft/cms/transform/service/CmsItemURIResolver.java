@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.impl.CmsItemIdArg;
+import se.simonsoft.cms.item.info.CmsItemLookup;
+import se.simonsoft.cms.item.info.CmsItemNotFoundException;
+
+/**
+ * Resolves xsl:include, xsl:import and doc() relative to a repository stylesheet, at head.
+ * Other URIs are left to the standard resolver.
+ */
+class CmsItemURIResolver implements URIResolver {
+	
+	private static final String SCHEME = "x-svn";
+	private static final Pattern SCHEME_PATTERN = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:");
+	
+	private final CmsItemLookup itemLookup;
+	private final CmsRepository repository;
+	
+	CmsItemURIResolver(CmsItemLookup itemLookup, CmsRepository repository) {
+		this.itemLookup = itemLookup;
+		this.repository = repository;
+	}
+
+	@Override
+	public Source resolve(String href, String base) throws TransformerException {
+		
+		CmsItemId itemId = getItemId(repository, href, base);
+		if (itemId == null) {
+			return null;
+		}
+		CmsItem item;
+		try {
+			item = itemLookup.getItem(itemId);
+		} catch (CmsItemNotFoundException e) {
+			throw new TransformerException("The href does not exist in the repository: " + href, e);
+		}
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		item.getContents(content);
+		return new StreamSource(new ByteArrayInputStream(content.toByteArray()), itemId.getLogicalId());
+	}
+	
+	/**
+	 * Logical ids are not valid URIs (the '^' separator), relative hrefs are resolved as repository paths.
+	 * @return the item at head, null if the href is not a repository URI
+	 */
+	static CmsItemId getItemId(CmsRepository repository, String href, String base) throws TransformerException {
+		
+		final CmsItemId parsed;
+		if (href.startsWith(SCHEME + ":")) {
+			parsed = new CmsItemIdArg(href);
+		} else if (SCHEME_PATTERN.matcher(href).find()) {
+			// Other scheme, e.g. http: or urn:
+			return null;
+		} else if (base != null && base.startsWith(SCHEME + ":")) {
+			CmsItemId baseId = new CmsItemIdArg(base);
+			parsed = baseId.getRepository().getItemId(getPath(baseId.getRelPath(), href), null);
+		} else {
+			return null;
+		}
+		
+		if (!repository.getName().equals(parsed.getRepository().getName())) {
+			throw new TransformerException("The href must be in the same repository as the stylesheet: " + href);
+		}
+		return repository.getItemId(parsed.getRelPath(), null);
+	}
+	
+	private static CmsItemPath getPath(CmsItemPath basePath, String href) throws TransformerException {
+		
+		final String path;
+		try {
+			// Decodes percent-encoded segments, e.g. %20.
+			path = new URI(href).getPath();
+		} catch (URISyntaxException e) {
+			throw new TransformerException("Invalid href: " + href, e);
+		}
+		if (path == null || path.isEmpty()) {
+			throw new TransformerException("The href must be a path: " + href);
+		}
+		
+		Deque<String> segments = new ArrayDeque<>();
+		if (!path.startsWith("/") && basePath != null && basePath.getParent() != null) {
+			segments.addAll(Arrays.asList(basePath.getParent().getPath().substring(1).split("/")));
+		}
+		for (String segment: path.split("/")) {
+			if (segment.isEmpty() || ".".equals(segment)) {
+				continue;
+			}
+			if ("..".equals(segment)) {
+				if (segments.isEmpty()) {
+					throw new TransformerException("The href is outside of the repository: " + href);
+				}
+				segments.removeLast();
+			} else {
+				segments.addLast(segment);
+			}
+		}
+		if (segments.isEmpty()) {
+			throw new TransformerException("The href must be a file: " + href);
+		}
+		return new CmsItemPath("/" + String.join("/", segments));
+	}
+
+}
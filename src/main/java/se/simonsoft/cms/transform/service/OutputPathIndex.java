@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.CmsItemKind;
+import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.info.CmsItemLookup;
+import se.simonsoft.cms.item.info.CmsItemNotFoundException;
+
+/**
+ * Transform scoped index of existing output files, 
+ * lists each output folder once instead of looking up each output path.
+ * 
+ * Folders that do not exist are indexed as empty, they will be created by the patchset (FolderExist).
+ * 
+ * The index can optionally keep the listed items, e.g. for comparing checksums, at the cost of listing with properties.
+ */
+class OutputPathIndex {
+	
+	private static final Logger logger = LoggerFactory.getLogger(OutputPathIndex.class);
+	
+	private final CmsItemLookup itemLookup;
+	private final CmsRepository repository;
+	private final boolean items;
+	// Keyed by folder path, empty string for repository root.
+	// File names mapped to the item, null when listed without items.
+	private final Map<String, Map<String, CmsItem>> folders = new ConcurrentHashMap<>();
+	
+	OutputPathIndex(CmsItemLookup itemLookup, CmsRepository repository) {
+		this(itemLookup, repository, false);
+	}
+	
+	OutputPathIndex(CmsItemLookup itemLookup, CmsRepository repository, boolean items) {
+		this.itemLookup = itemLookup;
+		this.repository = repository;
+		this.items = items;
+	}
+	
+	boolean exists(CmsItemPath path) {
+		return getFolder(path.getParent()).containsKey(path.getName());
+	}
+	
+	/**
+	 * @return the existing item, null if the path does not exist
+	 */
+	CmsItem getItem(CmsItemPath path) {
+		Map<String, CmsItem> files = getFolder(path.getParent());
+		if (!files.containsKey(path.getName())) {
+			return null;
+		}
+		CmsItem item = files.get(path.getName());
+		if (item == null) {
+			item = itemLookup.getItem(repository.getItemId().withRelPath(path));
+		}
+		return item;
+	}
+	
+	private Map<String, CmsItem> getFolder(CmsItemPath folder) {
+		return folders.computeIfAbsent(getKey(folder), key -> list(folder));
+	}
+	
+	private Map<String, CmsItem> list(CmsItemPath folder) {
+		
+		CmsItemId folderId = repository.getItemId().withRelPath(folder);
+		try {
+			Map<String, CmsItem> names = null;
+			if (items) {
+				names = listItems(folderId);
+			}
+			if (names == null) {
+				Set<CmsItemId> files = itemLookup.getImmediateFiles(folderId);
+				names = new HashMap<>(files.size() * 2);
+				for (CmsItemId file: files) {
+					names.put(file.getRelPath().getName(), null);
+				}
+			}
+			logger.debug("Output folder '{}' has {} existing files.", getKey(folder), names.size());
+			return names;
+		} catch (CmsItemNotFoundException e) {
+			logger.debug("Output folder '{}' does not exist.", getKey(folder));
+			return Collections.emptyMap();
+		}
+	}
+	
+	private Map<String, CmsItem> listItems(CmsItemId folderId) {
+		
+		Set<CmsItem> children;
+		try {
+			children = itemLookup.getImmediates(folderId);
+		} catch (UnsupportedOperationException e) {
+			logger.debug("Backend does not support listing with properties, items will be looked up: {}", e.getMessage());
+			return null;
+		}
+		Map<String, CmsItem> names = new HashMap<>(children.size() * 2);
+		for (CmsItem child: children) {
+			if (child.getKind() == CmsItemKind.File) {
+				names.put(child.getId().getRelPath().getName(), child);
+			}
+		}
+		return names;
+	}
+	
+	private static String getKey(CmsItemPath folder) {
+		return (folder == null) ? "" : folder.getPath();
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.transform.Result;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.saxon.lib.OutputURIResolver;
+import net.sf.saxon.s9api.Processor;
+
+/**
+ * Output URI resolver that serializes each xsl:result-document while it is produced, instead of keeping the XdmNode trees until the transform completes.
+ * 
+ * Serialization is equivalent to output.xsl, see {@link TransformOutputSerializer}.
+ * The serialized result documents are spooled in memory up to a threshold, then to temporary files in the given directory. 
+ */
+class SaxonOutputURIResolverSpool implements OutputURIResolver {
+	
+	private static final Logger logger = LoggerFactory.getLogger(SaxonOutputURIResolverSpool.class);
+	
+	private final Processor processor;
+	private final Path directory;
+	private final int threshold;
+	
+	private final Map<String, TransformOutputSpool> spools = new LinkedHashMap<>();
+	private final Map<Result, TransformOutputSpool> open = new IdentityHashMap<>();
+	
+	SaxonOutputURIResolverSpool(Processor processor, Path directory, int threshold) {
+		this.processor = processor;
+		this.directory = directory;
+		this.threshold = threshold;
+	}
+
+	@Override
+	public OutputURIResolver newInstance() {
+		// Each instance is used for a single transform.
+		return this;
+	}
+
+	@Override
+	public synchronized Result resolve(String href, String base) throws TransformerException {
+		
+		if (spools.containsKey(href)) {
+			throw new TransformerException("Duplicate result document href: " + href);
+		}
+		
+		TransformOutputSpool spool = new TransformOutputSpool(directory, threshold);
+		TransformOutputSerializer serializer = new TransformOutputSerializer(processor, spool);
+		SAXResult result = new SAXResult(serializer);
+		result.setLexicalHandler(serializer);
+		result.setSystemId(getSystemId(href, base));
+		
+		spools.put(href, spool);
+		open.put(result, spool);
+		return result;
+	}
+
+	@Override
+	public synchronized void close(Result result) throws TransformerException {
+		
+		TransformOutputSpool spool = open.remove(result);
+		if (spool == null) {
+			return;
+		}
+		
+		try {
+			spool.close();
+			logger.trace("Spooled result document {} ({} bytes, file: {})", result.getSystemId(), spool.size(), spool.isFile());
+		} catch (IOException e) {
+			throw new TransformerException("Failed to spool result document: " + result.getSystemId(), e);
+		}
+	}
+	
+	public synchronized Set<String> getResultDocumentHrefs() {
+		return new LinkedHashSet<>(spools.keySet());
+	}
+	
+	public synchronized InputStream getResultDocument(String href) throws IOException {
+		TransformOutputSpool spool = spools.get(href);
+		if (spool == null) {
+			throw new IllegalArgumentException("No result document with href: " + href);
+		}
+		return spool.getInputStream();
+	}
+	
+	public synchronized long getResultDocumentSize(String href) {
+		TransformOutputSpool spool = spools.get(href);
+		if (spool == null) {
+			throw new IllegalArgumentException("No result document with href: " + href);
+		}
+		return spool.size();
+	}
+	
+	public synchronized void discard() {
+		spools.values().forEach(TransformOutputSpool::discard);
+	}
+	
+	private String getSystemId(String href, String base) {
+		if (base == null) {
+			return href;
+		}
+		try {
+			return new URI(base).resolve(href).toString();
+		} catch (Exception e) {
+			// The href is not always encoded, see decodeHref(..) in TransformServiceXsl.
+			return base + "#" + href;
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("se.simonsoft.cms.transform.Item")
+@Label("Transform Item")
+@Category({"CMS", "Transform"})
+@Description("Transform of a single item, including serialization of all outputs.")
+class TransformItemEvent extends jdk.jfr.Event {
+	
+	@Label("Item Id")
+	String itemId;
+	
+	@Label("Stylesheet")
+	String stylesheet;
+	
+	@Label("Config")
+	String config;
+	
+	@Label("Size")
+	@Description("Size of the source item, -1 if the item was not listed or looked up before the transform.")
+	@DataAmount
+	long size;
+	
+	@Label("Output Count")
+	@Description("Number of outputs, including the principal output.")
+	int outputCount;
+	
+	@Label("Success")
+	boolean success;
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.transform.SourceLocator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.saxon.s9api.MessageListener;
+import net.sf.saxon.s9api.XdmNode;
+
+/**
+ * Bounded capture of xsl:message for the history message.
+ * Messages are retained in order until the size budget is reached, subsequent messages are only counted (and logged at debug).
+ * 
+ * Set as message listener of the streaming transformer, the budget applies as the messages arrive.
+ * Other transforms capture the messages of an item with the listener of TransformOptions, added when the item is transformed.
+ */
+class TransformMessages implements MessageListener {
+	
+	private static final Logger logger = LoggerFactory.getLogger(TransformMessages.class);
+	
+	private final int maxSize;
+	private final List<String> messages = new ArrayList<>();
+	private int size = 0;
+	private int overflow = 0;
+	
+	/**
+	 * @param maxSize total length of retained messages
+	 */
+	TransformMessages(int maxSize) {
+		this.maxSize = maxSize;
+	}
+	
+	@Override
+	public void message(XdmNode content, boolean terminate, SourceLocator locator) {
+		add(content.getStringValue());
+	}
+	
+	synchronized void add(String message) {
+		
+		if (message == null || message.trim().isEmpty()) {
+			return;
+		}
+		
+		if (overflow == 0 && size + message.length() < maxSize) {
+			messages.add(message);
+			size += message.length() + 1;
+		} else {
+			overflow++;
+			logger.debug("Transform message not retained in history message: {}", message);
+		}
+	}
+	
+	synchronized void addAll(Collection<String> messages) {
+		for (String message: messages) {
+			add(message);
+		}
+	}
+	
+	/**
+	 * Merges the capture of a single item, messages not retained by the item are counted.
+	 */
+	synchronized void addAll(TransformMessages item) {
+		addAll(item.getMessages());
+		overflow += item.getOverflow();
+	}
+	
+	/**
+	 * Summary from the transform itself, always retained.
+	 */
+	synchronized void addFirst(String message) {
+		messages.add(0, message);
+		size += message.length() + 1;
+	}
+	
+	synchronized List<String> getMessages() {
+		return Collections.unmodifiableList(new ArrayList<>(messages));
+	}
+	
+	/**
+	 * @return number of messages that were not retained
+	 */
+	synchronized int getOverflow() {
+		return overflow;
+	}
+
+}
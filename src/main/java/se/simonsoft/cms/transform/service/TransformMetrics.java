@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import se.simonsoft.cms.item.CmsRepository;
+
+/**
+ * Timers and counters of transform / import phases, tagged by repository and config name.
+ * 
+ * See {@link TransformMetricsJmx} for the default implementation.
+ */
+public interface TransformMetrics {
+	
+	enum Phase {
+		STYLESHEET, // Lookup and compile of the stylesheet.
+		TRANSFORM, // The XSL transform, producing the principal output.
+		SERIALIZE, // Serialization of result documents, including output.xsl.
+		EXISTS, // Existence checks of output paths.
+		LOCK,
+		COMMIT,
+		DOWNLOAD
+	}
+	
+	enum Counter {
+		ITEMS,
+		OUTPUTS,
+		BYTES,
+		EMPTY, // Empty outputs, discarded.
+		LOCKS,
+		FAILURES
+	}
+	
+	/**
+	 * @param repository
+	 * @param config name of the config, null if not named
+	 * @return recorder for the repository and config, shared by concurrent transforms
+	 */
+	Recorder getRecorder(CmsRepository repository, String config);
+	
+	interface Recorder {
+		
+		void time(Phase phase, long nanos);
+		
+		void count(Counter counter, long delta);
+	}
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes of an output when it is read by the commit, reported once at end of stream or close.
+ */
+class TransformMetricsInputStream extends FilterInputStream {
+	
+	private final TransformMetrics.Recorder recorder;
+	private long count = 0;
+	private boolean reported = false;
+	
+	TransformMetricsInputStream(InputStream in, TransformMetrics.Recorder recorder) {
+		super(in);
+		this.recorder = recorder;
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b == -1) {
+			report();
+		} else {
+			count++;
+		}
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n == -1) {
+			report();
+		} else {
+			count += n;
+		}
+		return n;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count += skipped;
+		return skipped;
+	}
+	
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		report();
+		super.close();
+	}
+	
+	private void report() {
+		if (!reported) {
+			reported = true;
+			recorder.count(TransformMetrics.Counter.BYTES, count);
+		}
+	}
+
+}
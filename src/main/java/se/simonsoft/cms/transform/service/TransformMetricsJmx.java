@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.simonsoft.cms.item.CmsRepository;
+
+/**
+ * Default metrics, published as MXBeans in the platform MBeanServer:
+ * se.simonsoft.cms.transform:type=TransformMetrics,repository=...,config=...
+ */
+public class TransformMetricsJmx implements TransformMetrics {
+	
+	private static final Logger logger = LoggerFactory.getLogger(TransformMetricsJmx.class);
+	
+	static final String DOMAIN = "se.simonsoft.cms.transform";
+	private static final String CONFIG_UNNAMED = "(unnamed)";
+	
+	private final MBeanServer server;
+	private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+	
+	public TransformMetricsJmx() {
+		this(ManagementFactory.getPlatformMBeanServer());
+	}
+	
+	public TransformMetricsJmx(MBeanServer server) {
+		this.server = server;
+	}
+
+	@Override
+	public Recorder getRecorder(CmsRepository repository, String config) {
+		
+		final String repositoryName = repository.getName();
+		final String configName = (config != null) ? config : CONFIG_UNNAMED;
+		return recorders.computeIfAbsent(repositoryName + "|" + configName, key -> register(new MetricsBean(repositoryName, configName)));
+	}
+	
+	private MetricsBean register(MetricsBean bean) {
+		
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=TransformMetrics,repository=" + ObjectName.quote(bean.repository) + ",config=" + ObjectName.quote(bean.config));
+			if (server.isRegistered(name)) {
+				// Typically a previous instance of the service, replaced.
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(bean, name);
+		} catch (JMException e) {
+			// Metrics are still recorded, just not published.
+			logger.warn("Failed to register transform metrics for '{}' / '{}': {}", bean.repository, bean.config, e.getMessage());
+		}
+		return bean;
+	}
+	
+	private static class MetricsBean implements Recorder, TransformMetricsMXBean {
+		
+		private final String repository;
+		private final String config;
+		private final LongAdder[] time = createAdders(Phase.values().length);
+		private final LongAdder[] timeCount = createAdders(Phase.values().length);
+		private final LongAdder[] counters = createAdders(Counter.values().length);
+		
+		MetricsBean(String repository, String config) {
+			this.repository = repository;
+			this.config = config;
+		}
+		
+		@Override
+		public void time(Phase phase, long nanos) {
+			time[phase.ordinal()].add(nanos);
+			timeCount[phase.ordinal()].increment();
+		}
+		
+		@Override
+		public void count(Counter counter, long delta) {
+			counters[counter.ordinal()].add(delta);
+		}
+		
+		@Override
+		public String getRepository() {
+			return repository;
+		}
+		
+		@Override
+		public String getConfig() {
+			return config;
+		}
+		
+		@Override
+		public Map<String, Long> getTimeMillis() {
+			Map<String, Long> result = new LinkedHashMap<>();
+			for (Phase phase: Phase.values()) {
+				result.put(phase.name(), TimeUnit.NANOSECONDS.toMillis(time[phase.ordinal()].sum()));
+			}
+			return result;
+		}
+		
+		@Override
+		public Map<String, Long> getTimeCount() {
+			Map<String, Long> result = new LinkedHashMap<>();
+			for (Phase phase: Phase.values()) {
+				result.put(phase.name(), timeCount[phase.ordinal()].sum());
+			}
+			return result;
+		}
+		
+		@Override
+		public Map<String, Long> getCounters() {
+			Map<String, Long> result = new LinkedHashMap<>();
+			for (Counter counter: Counter.values()) {
+				result.put(counter.name(), counters[counter.ordinal()].sum());
+			}
+			return result;
+		}
+		
+		@Override
+		public void reset() {
+			for (LongAdder a: time) a.reset();
+			for (LongAdder a: timeCount) a.reset();
+			for (LongAdder a: counters) a.reset();
+		}
+		
+		private static LongAdder[] createAdders(int length) {
+			LongAdder[] adders = new LongAdder[length];
+			for (int i = 0; i < length; i++) {
+				adders[i] = new LongAdder();
+			}
+			return adders;
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link TransformMetricsJmx}, one MXBean per repository and config.
+ */
+public interface TransformMetricsMXBean {
+	
+	String getRepository();
+	
+	String getConfig();
+	
+	/**
+	 * @return total time per phase in milliseconds
+	 */
+	Map<String, Long> getTimeMillis();
+	
+	/**
+	 * @return number of timed invocations per phase
+	 */
+	Map<String, Long> getTimeCount();
+	
+	Map<String, Long> getCounters();
+	
+	void reset();
+
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SAXDestination;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.Serializer;
+import net.sf.saxon.s9api.XdmNode;
+
+/**
+ * Serializes a result document with the same result as output.xsl, without building a tree.
+ * 
+ * The attributes cms:doctype-public and cms:doctype-system on the root element are used as DOCTYPE declaration and removed from the output.
+ * The Saxon Serializer is created when the root element starts, events before the root element are deferred until then.
+ */
+class TransformOutputSerializer implements ContentHandler, LexicalHandler {
+	
+	static final String CMS_NAMESPACE = "http://www.simonsoft.se/namespace/cms";
+	private static final String DOCTYPE_PUBLIC = "doctype-public";
+	private static final String DOCTYPE_SYSTEM = "doctype-system";
+	
+	private final Processor processor;
+	private final OutputStream out;
+	private final List<DeferredEvent> deferred = new ArrayList<>();
+	
+	private Locator locator;
+	private ContentHandler handler;
+	private LexicalHandler lexicalHandler;
+	
+	TransformOutputSerializer(Processor processor, OutputStream out) {
+		this.processor = processor;
+		this.out = out;
+	}
+	
+	/**
+	 * Serializes a result document tree, equivalent to the output.xsl transform.
+	 */
+	static void serialize(Processor processor, XdmNode document, OutputStream out) throws SaxonApiException {
+		TransformOutputSerializer serializer = new TransformOutputSerializer(processor, out);
+		processor.writeXdmValue(document, new SAXDestination(serializer));
+	}
+	
+	private void startSerializer(String doctypePublic, String doctypeSystem) throws SAXException {
+		
+		Serializer serializer = processor.newSerializer(out);
+		// Same serialization parameters as output.xsl.
+		serializer.setOutputProperty(Serializer.Property.METHOD, "xml");
+		serializer.setOutputProperty(Serializer.Property.ENCODING, "UTF-8");
+		serializer.setOutputProperty(Serializer.Property.OMIT_XML_DECLARATION, "no");
+		serializer.setOutputProperty(Serializer.Property.NORMALIZATION_FORM, "NFC");
+		// DOCTYPE declaration will be set ONLY if both public and system IDs are present.
+		if (doctypePublic != null && !doctypePublic.isEmpty()) {
+			serializer.setOutputProperty(Serializer.Property.DOCTYPE_PUBLIC, doctypePublic);
+			if (doctypeSystem != null && !doctypeSystem.isEmpty()) {
+				serializer.setOutputProperty(Serializer.Property.DOCTYPE_SYSTEM, doctypeSystem);
+			}
+		}
+		
+		try {
+			handler = serializer.getContentHandler();
+		} catch (SaxonApiException e) {
+			throw new SAXException("Failed to create serializer: " + e.getMessage(), e);
+		}
+		if (handler instanceof LexicalHandler) {
+			lexicalHandler = (LexicalHandler) handler;
+		}
+		if (locator != null) {
+			handler.setDocumentLocator(locator);
+		}
+		for (DeferredEvent event: deferred) {
+			event.run();
+		}
+		deferred.clear();
+	}
+	
+	private void handle(DeferredEvent event) throws SAXException {
+		if (handler == null) {
+			deferred.add(event);
+		} else {
+			event.run();
+		}
+	}
+	
+	private Attributes getAttributesOutput(Attributes atts) {
+		
+		if (atts.getIndex(CMS_NAMESPACE, DOCTYPE_PUBLIC) < 0 && atts.getIndex(CMS_NAMESPACE, DOCTYPE_SYSTEM) < 0) {
+			return atts;
+		}
+		
+		AttributesImpl result = new AttributesImpl(atts);
+		for (int i = result.getLength() - 1; i >= 0; i--) {
+			if (CMS_NAMESPACE.equals(result.getURI(i)) && (DOCTYPE_PUBLIC.equals(result.getLocalName(i)) || DOCTYPE_SYSTEM.equals(result.getLocalName(i)))) {
+				result.removeAttribute(i);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void setDocumentLocator(Locator locator) {
+		this.locator = locator;
+		if (handler != null) {
+			handler.setDocumentLocator(locator);
+		}
+	}
+
+	@Override
+	public void startDocument() throws SAXException {
+		handle(() -> handler.startDocument());
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		if (handler == null) {
+			// Empty document, no root element.
+			startSerializer(null, null);
+		}
+		handler.endDocument();
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) throws SAXException {
+		handle(() -> handler.startPrefixMapping(prefix, uri));
+	}
+
+	@Override
+	public void endPrefixMapping(String prefix) throws SAXException {
+		handle(() -> handler.endPrefixMapping(prefix));
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		if (handler == null) {
+			startSerializer(atts.getValue(CMS_NAMESPACE, DOCTYPE_PUBLIC), atts.getValue(CMS_NAMESPACE, DOCTYPE_SYSTEM));
+		}
+		handler.startElement(uri, localName, qName, getAttributesOutput(atts));
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		handler.endElement(uri, localName, qName);
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (handler == null) {
+			// Text is not allowed outside of the root element, copy in case the array is reused.
+			final char[] copy = new char[length];
+			System.arraycopy(ch, start, copy, 0, length);
+			handle(() -> handler.characters(copy, 0, length));
+		} else {
+			handler.characters(ch, start, length);
+		}
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		if (handler != null) {
+			handler.ignorableWhitespace(ch, start, length);
+		}
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) throws SAXException {
+		handle(() -> handler.processingInstruction(target, data));
+	}
+
+	@Override
+	public void skippedEntity(String name) throws SAXException {
+		handle(() -> handler.skippedEntity(name));
+	}
+
+	@Override
+	public void startDTD(String name, String publicId, String systemId) throws SAXException {
+		// The DOCTYPE declaration is controlled by the cms:doctype-* attributes.
+	}
+
+	@Override
+	public void endDTD() throws SAXException {
+	}
+
+	@Override
+	public void startEntity(String name) throws SAXException {
+	}
+
+	@Override
+	public void endEntity(String name) throws SAXException {
+	}
+
+	@Override
+	public void startCDATA() throws SAXException {
+		if (lexicalHandler != null) {
+			lexicalHandler.startCDATA();
+		}
+	}
+
+	@Override
+	public void endCDATA() throws SAXException {
+		if (lexicalHandler != null) {
+			lexicalHandler.endCDATA();
+		}
+	}
+
+	@Override
+	public void comment(char[] ch, int start, int length) throws SAXException {
+		if (handler == null) {
+			final char[] copy = new char[length];
+			System.arraycopy(ch, start, copy, 0, length);
+			deferred.add(() -> comment(copy, 0, length));
+		} else if (lexicalHandler != null) {
+			lexicalHandler.comment(ch, start, length);
+		}
+	}
+	
+	private interface DeferredEvent {
+		void run() throws SAXException;
+	}
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Output stream for a single result document, kept in memory up to a threshold and then spilled to a temporary file.
+ * 
+ * The content can be read once via {@link #getInputStream()} after the spool has been closed.
+ * A file backed spool is deleted when the stream is closed, or by {@link #discard()}.
+ */
+class TransformOutputSpool extends OutputStream {
+	
+	private final Path directory;
+	private final int threshold;
+	
+	private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+	private Path file = null;
+	private OutputStream fileOut = null;
+	private long size = 0;
+	private boolean closed = false;
+	
+	TransformOutputSpool(Path directory, int threshold) {
+		this.directory = directory;
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Spool is closed.");
+		}
+		if (file == null && size + len > threshold) {
+			spill();
+		}
+		if (file == null) {
+			memory.write(b, off, len);
+		} else {
+			fileOut.write(b, off, len);
+		}
+		size += len;
+	}
+	
+	private void spill() throws IOException {
+		file = Files.createTempFile(directory, "output-", ".xml");
+		fileOut = new BufferedOutputStream(Files.newOutputStream(file));
+		memory.writeTo(fileOut);
+		memory = null;
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		if (fileOut != null) {
+			fileOut.flush();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (!closed && fileOut != null) {
+			fileOut.close();
+		}
+		closed = true;
+	}
+	
+	long size() {
+		return size;
+	}
+	
+	boolean isFile() {
+		return file != null;
+	}
+	
+	InputStream getInputStream() throws IOException {
+		if (!closed) {
+			throw new IllegalStateException("Spool must be closed before reading.");
+		}
+		if (file == null) {
+			return new ByteArrayInputStream(memory.toByteArray());
+		}
+		return Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
+	}
+	
+	void discard() {
+		try {
+			close();
+			if (file != null) {
+				Files.deleteIfExists(file);
+			}
+		} catch (IOException e) {
+			// Temporary directory is removed after the transform.
+		}
+		memory = null;
+	}
+
+}
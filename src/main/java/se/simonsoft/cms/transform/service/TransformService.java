@@ -20,11 +20,35 @@ import se.simonsoft.cms.item.CmsItemId;
 import se.simonsoft.cms.transform.config.databind.TransformConfig;
 import se.simonsoft.cms.transform.config.databind.TransformImportOptions;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 public interface TransformService {
 	
 	void transform(CmsItemId item, TransformConfig config);
+	
+	/**
+	 * Transforms a list of items into a single commit.
+	 * The default implementation transforms the items one by one, a commit per item.
+	 * @param items files in the same repository
+	 * @param config
+	 */
+	default void transform(List<CmsItemId> items, TransformConfig config) {
+		for (CmsItemId item: items) {
+			transform(item, config);
+		}
+	}
+	
+	/**
+	 * Compiles the stylesheets of active configurations, avoiding the compile time in the first transform.
+	 * @param itemId any item in the repository, used for resolving repository stylesheets
+	 * @param configs
+	 * @return the number of stylesheets that are ready, the default implementation does not compile any
+	 */
+	default int warmUp(CmsItemId itemId, Collection<TransformConfig> configs) {
+		return 0;
+	}
 
 	Set<CmsItemId> importItem(CmsItemId itemId, TransformImportOptions config);
 
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.info.CmsItemLookup;
+import se.simonsoft.cms.transform.config.TransformConfiguration;
+import se.simonsoft.cms.transform.config.databind.TransformConfig;
+import se.simonsoft.cms.transform.event.TransformPathsMatcher;
+
+/**
+ * Compiles the stylesheets configured within cmsconfig:TransformPaths, 
+ * typically invoked after deploy before the first transform.
+ * 
+ * The configurations are resolved per folder the same way as for items changed in the folder, 
+ * for the transform paths and their subfolders down to {@link #FOLDER_DEPTH_MAX}, at most {@link #FOLDER_COUNT_MAX} folders.
+ * Configurations only set deeper down are compiled by the first transform.
+ */
+public class TransformServiceWarmup {
+	
+	private static final Logger logger = LoggerFactory.getLogger(TransformServiceWarmup.class);
+	
+	static final int FOLDER_DEPTH_MAX = 2; // Transform path and two levels of subfolders.
+	static final int FOLDER_COUNT_MAX = 200;
+	
+	private final TransformConfiguration transformConfiguration;
+	private final Map<CmsRepository, CmsItemLookup> itemLookup;
+	private final Map<CmsRepository, TransformService> transformServiceMap;
+	
+	@Inject
+	public TransformServiceWarmup(
+			TransformConfiguration transformConfiguration,
+			Map<CmsRepository, CmsItemLookup> itemLookup,
+			Map<CmsRepository, TransformService> transformServiceMap
+			) {
+		
+		this.transformConfiguration = transformConfiguration;
+		this.itemLookup = itemLookup;
+		this.transformServiceMap = transformServiceMap;
+	}
+	
+	/**
+	 * @param repository
+	 * @return the number of stylesheets that are ready, counted once per stylesheet
+	 */
+	public int warmUp(CmsRepository repository) {
+		
+		final TransformService transformService = transformServiceMap.get(repository);
+		final CmsItemLookup lookup = itemLookup.get(repository);
+		final CmsItem repoItem = lookup.getItem(repository.getItemId());
+		final TransformPathsMatcher matcher = TransformPathsMatcher.getTransformPaths(repoItem);
+		if (matcher.getPaths().isEmpty()) {
+			logger.info("No transform paths in repository: {}", repository);
+			return 0;
+		}
+		
+		// Stylesheets are compiled once, regardless of the number of folders with the config.
+		final Map<String, TransformConfig> configs = new LinkedHashMap<>();
+		final Map<String, CmsItemId> configFolders = new LinkedHashMap<>();
+		int folders = 0;
+		// Breadth first, the configs are typically set on the transform paths or close to them.
+		final Deque<CmsItemId> remaining = new ArrayDeque<>();
+		final Map<CmsItemId, Integer> depth = new HashMap<>();
+		for (CmsItemPath path: matcher.getPaths()) {
+			CmsItemId pathId = repository.getItemId(path, null);
+			remaining.add(pathId);
+			depth.put(pathId, 0);
+		}
+		while (!remaining.isEmpty()) {
+			if (folders >= FOLDER_COUNT_MAX) {
+				logger.info("Warm up limited to {} transform folders, {} folders remaining: {}", FOLDER_COUNT_MAX, remaining.size(), repository);
+				break;
+			}
+			CmsItemId folderId = remaining.poll();
+			try {
+				for (Map.Entry<String, TransformConfig> e: transformConfiguration.getConfigurationFolder(folderId).entrySet()) {
+					TransformConfig config = e.getValue();
+					if (!config.isActive() || config.getOptions() == null) {
+						continue;
+					}
+					String stylesheet = config.getOptions().getParams().get("stylesheet");
+					if (stylesheet == null) {
+						continue;
+					}
+					// Streaming stylesheets are compiled separately.
+					String key = Boolean.parseBoolean(config.getOptions().getParams().get("streaming")) ? stylesheet + "|streaming" : stylesheet;
+					if (!configs.containsKey(key)) {
+						config.setName(e.getKey());
+						configs.put(key, config);
+						configFolders.put(key, folderId);
+					}
+				}
+				folders++;
+				int folderDepth = depth.get(folderId);
+				if (folderDepth < FOLDER_DEPTH_MAX) {
+					for (CmsItemId subfolderId: lookup.getImmediateFolders(folderId)) {
+						if (!depth.containsKey(subfolderId)) {
+							depth.put(subfolderId, folderDepth + 1);
+							remaining.add(subfolderId);
+						}
+					}
+				}
+			} catch (RuntimeException e) {
+				logger.warn("Failed to read transform config of folder '{}': {}", folderId, e.getMessage(), e);
+			}
+		}
+		
+		int count = 0;
+		for (Map.Entry<String, TransformConfig> e: configs.entrySet()) {
+			count += transformService.warmUp(configFolders.get(e.getKey()), Collections.singletonList(e.getValue()));
+		}
+		logger.info("Warm up of {} stylesheets in {} transform folders: {}", count, folders, repository);
+		return count;
+	}
+
+}
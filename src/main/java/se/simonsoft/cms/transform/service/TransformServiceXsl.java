@@ -16,6 +16,7 @@
 package se.simonsoft.cms.transform.service;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
@@ -25,13 +26,36 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 import javax.xml.transform.stream.StreamSource;
@@ -39,6 +63,10 @@ import javax.xml.transform.stream.StreamSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XsltExecutable;
+import se.simonsoft.cms.item.Checksum;
 import se.simonsoft.cms.item.CmsItem;
 import se.simonsoft.cms.item.CmsItemId;
 import se.simonsoft.cms.item.CmsItemKind;
@@ -58,6 +86,7 @@ import se.simonsoft.cms.item.info.CmsItemLookup;
 import se.simonsoft.cms.item.info.CmsItemNotFoundException;
 import se.simonsoft.cms.item.info.CmsRepositoryLookup;
 import se.simonsoft.cms.item.naming.CmsItemNameFactory;
+import se.simonsoft.cms.item.properties.CmsItemProperties;
 import se.simonsoft.cms.item.properties.CmsItemPropertiesMap;
 import se.simonsoft.cms.item.structure.CmsItemClassificationXml;
 import se.simonsoft.cms.reporting.CmsItemLookupReporting;
@@ -77,19 +106,32 @@ public class TransformServiceXsl implements TransformService {
 	private final CmsCommit commit;
 	private final CmsItemLookup itemLookup;
 	private final CmsItemLookupReporting itemLookupReporting;
-	private final CmsItemLookup itemLookupTransform;
+	private final CmsItemLookupTransform itemLookupTransform;
+	private final TransformStreaming transformStreaming;
+	private final TransformStylesheetModules stylesheetModules;
 	private final TransformerServiceFactory transformerServiceFactory;
 	private final CmsRepositoryLookup repoLookup;
 	private final XmlSourceReaderS9api sourceReader;
+	private final Processor processor;
 	private final CmsItemNameFactory itemNameFactory;
+	private final TransformMetrics metrics;
 	
 	private final TransformerService transformerOutput;
+	private final TransformStylesheetCache<TransformerService> stylesheetCache = new TransformStylesheetCache<>();
+	private final TransformStylesheetCache<XsltExecutable> streamingCache = new TransformStylesheetCache<>();
 	
 	private static final String TRANSFORM_LOCK_COMMENT = "Locked for transform";
 	private static final String TRANSFORM_BASE_PROP_KEY = "abx:TransformBase";
 	private static final String TRANSFORM_NAME_PROP_KEY = "abx:TransformName";
+	private static final String TRANSFORM_BASE_REVISION_PROP_KEY = "abx:TransformBaseRevision";
+	private static final String TRANSFORM_STYLESHEET_REVISION_PROP_KEY = "abx:TransformStylesheetRevision";
 	private static final int HISTORY_MSG_MAX_SIZE = 2000;
-	private static final String OUTPUT_TRANSFORM = "se/simonsoft/cms/transform/output.xsl";
+	private static final String IMPORT_METRICS_NAME = "import"; // Import options are not named, recorded as a separate config.
+	static final String OUTPUT_TRANSFORM = "se/simonsoft/cms/transform/output.xsl";
+	private static final int LOOKUP_CONCURRENCY_MAX = 8; // Lookups are not CPU bound, not limited by the parallelism param.
+	private static final int LOCK_BATCH_MAX_SIZE = 500; // Paths per lock call.
+	private static final int OUTPUT_SPOOL_MEMORY_MAX_SIZE = 1024 * 1024; // Larger result documents are spooled to temporary files.
+	private static final int EXECUTOR_TERMINATION_TIMEOUT_SECONDS = 60; // All tasks are already awaited, only guards against a hanging task.
 
 	private static final int HTTP_URL_CONNECTION_READ_TIMEOUT = 60000;  	// 60 seconds
 	private static final int HTTP_URL_CONNECTION_CONNECT_TIMEOUT = 30000;  	// 30 seconds
@@ -97,6 +139,10 @@ public class TransformServiceXsl implements TransformService {
 
 	private static final Logger logger = LoggerFactory.getLogger(TransformServiceXsl.class);
 
+	/**
+	 * Serializes result documents and compiles streaming stylesheets with a separate Saxon {@link Processor}, 
+	 * the licensed edition when available on the classpath.
+	 */
 	@Inject
 	public TransformServiceXsl(
 			CmsCommit commit,
@@ -107,6 +153,40 @@ public class TransformServiceXsl implements TransformService {
 			XmlSourceReaderS9api sourceReader,
 			CmsItemNameFactory itemNameFactory
 			) {
+		this(commit, itemLookup, itemLookupReporting, lookupRepo, transfromerServiceFactory, sourceReader, new Processor(true), itemNameFactory, new TransformMetricsJmx());
+	}
+	
+	/**
+	 * Not injected, for a provider sharing the Processor of the XmlSourceReaderS9api and TransformerServiceFactory 
+	 * (typically provided by SaxonConfiguration), e.g. a configured Saxon-EE license for streaming.
+	 */
+	public TransformServiceXsl(
+			CmsCommit commit,
+			CmsItemLookup itemLookup,
+			CmsItemLookupReporting itemLookupReporting,
+			CmsRepositoryLookup lookupRepo,
+			TransformerServiceFactory transfromerServiceFactory,
+			XmlSourceReaderS9api sourceReader,
+			Processor processor,
+			CmsItemNameFactory itemNameFactory
+			) {
+		this(commit, itemLookup, itemLookupReporting, lookupRepo, transfromerServiceFactory, sourceReader, processor, itemNameFactory, new TransformMetricsJmx());
+	}
+	
+	/**
+	 * Not injected, for testing with separate metrics.
+	 */
+	TransformServiceXsl(
+			CmsCommit commit,
+			CmsItemLookup itemLookup,
+			CmsItemLookupReporting itemLookupReporting,
+			CmsRepositoryLookup lookupRepo,
+			TransformerServiceFactory transfromerServiceFactory,
+			XmlSourceReaderS9api sourceReader,
+			Processor processor,
+			CmsItemNameFactory itemNameFactory,
+			TransformMetrics metrics
+			) {
 		
 		this.commit = commit;
 		this.itemLookup = itemLookup;
@@ -114,27 +194,70 @@ public class TransformServiceXsl implements TransformService {
 		this.repoLookup = lookupRepo;
 		this.transformerServiceFactory = transfromerServiceFactory;
 		this.sourceReader = sourceReader;
+		this.processor = processor;
 		this.itemNameFactory = itemNameFactory;
+		this.metrics = metrics;
 		
 		this.transformerOutput = transfromerServiceFactory.buildTransformerService(new StreamSource(this.getClass().getClassLoader().getResourceAsStream(OUTPUT_TRANSFORM)));
 		this.itemLookupTransform = new CmsItemLookupTransform(itemLookup, itemLookupReporting);
+		this.transformStreaming = new TransformStreaming(processor, itemLookup);
+		this.stylesheetModules = new TransformStylesheetModules(itemLookup);
 	}
 
 	@Override
 	public void transform(CmsItemId itemId, TransformConfig config) {
-		if (config == null || config.getOptions() == null) {
-			throw new IllegalArgumentException("TransformServiceXsl needs a valid TransformConfig object.");
-		}
+		validateConfig(config);
 		
 		final CmsItemId baseItemId = itemId;
-		final CmsRepository repository = baseItemId.getRepository();
-		final RepoRevision baseRevision = repoLookup.getYoungest(repository);
 		
 		// Prevent repository root, could be supported but requires some refactoring below.
 		if (baseItemId.getRelPath() == null) {
 			throw new IllegalArgumentException("TransformServiceXsl does not support repository root.");
 		}
 		
+		validateOutput(baseItemId, config);
+		
+		CmsItem item = itemLookup.getItem(baseItemId);
+		
+		Map<CmsItemId, CmsItem> items = new LinkedHashMap<>();
+		if (item.getKind() == CmsItemKind.Folder) {
+			items.putAll(getTransformableItems(baseItemId));
+		} else {
+			items.put(baseItemId, item);
+		}
+		transformItems(baseItemId, items, config);
+	}
+	
+	@Override
+	public void transform(List<CmsItemId> itemIds, TransformConfig config) {
+		validateConfig(config);
+		
+		if (itemIds == null || itemIds.isEmpty()) {
+			throw new IllegalArgumentException("TransformServiceXsl needs at least one item.");
+		}
+		
+		final CmsItemId baseItemId = itemIds.get(0);
+		for (CmsItemId itemId: itemIds) {
+			if (itemId.getRelPath() == null) {
+				throw new IllegalArgumentException("TransformServiceXsl does not support repository root.");
+			}
+			if (!baseItemId.getRepository().equals(itemId.getRepository())) {
+				throw new IllegalArgumentException("All items must be in the same repository: " + itemId);
+			}
+		}
+		
+		validateOutput(baseItemId, config);
+		
+		Map<CmsItemId, CmsItem> items = new LinkedHashMap<>();
+		itemIds.forEach(itemId -> items.put(itemId, null));
+		transformItems(baseItemId, items, config);
+	}
+	
+	private void validateConfig(TransformConfig config) {
+		if (config == null || config.getOptions() == null) {
+			throw new IllegalArgumentException("TransformServiceXsl needs a valid TransformConfig object.");
+		}
+		
 		if (!config.getOptions().getType().equals("xsl")) {
 			throw new IllegalArgumentException("TransformServiceXsl can only handle xsl transforms but was given: " + config.getOptions().getType());
 		}
@@ -143,55 +266,264 @@ public class TransformServiceXsl implements TransformService {
 		if (stylesheet == null || stylesheet.trim().isEmpty()) {
 			throw new IllegalArgumentException("Requires a valid stylesheet path or stylesheet name.");
 		}
-		
+	}
+	
+	private void validateOutput(CmsItemId baseItemId, TransformConfig config) {
 		final CmsItemPath outputPath = getOutputPath(baseItemId ,config.getOptions().getParams().get("output"));
-		if (!pathExists(repository, outputPath)) {
+		if (!pathExists(baseItemId.getRepository(), outputPath)) {
 			throw new IllegalArgumentException("Specified output must be an existing folder: " + outputPath.getPath());
 		}
+	}
+	
+	/**
+	 * Transforms the items into a single patchset / commit, or one commit per chunk when configured.
+	 * @param baseItemId the item, or folder, used for resolving the stylesheet
+	 * @param sourceItems the items to transform, with the item when already listed or looked up (otherwise null)
+	 */
+	private void transformItems(CmsItemId baseItemId, Map<CmsItemId, CmsItem> sourceItems, TransformConfig config) {
 		
-		CmsItem item = itemLookup.getItem(baseItemId);
-		
-		final TransformerService transformerService = getTransformerService(baseItemId, stylesheet);
+		Set<CmsItemId> items = new LinkedHashSet<>(sourceItems.keySet());
 		
-		// CmsItemLookupTransform will capture items with specific class, normal items will resolve via normal CmsItemLookup.
-		transformerService.setItemLookup(itemLookupTransform);
+		final String stylesheet = config.getOptions().getParams().get("stylesheet");
 		
-		final CmsPatchset patchset = new CmsPatchset(repository, baseRevision);
-		TransformOptions transformOptions = new TransformOptions();
+		final boolean streaming = Boolean.parseBoolean(config.getOptions().getParams().get("streaming"));
 		
-		Set<CmsItemId> items = new LinkedHashSet<>();
-		if (item.getKind() == CmsItemKind.Folder) {
-			Set<CmsItemId> files = itemLookup.getImmediateFiles(baseItemId);
-			// Filtering based on CmsItemClassificationXml in combination with tikahtml cms:class.
-			// Workaround for backend returning itemIds with p=-1, remove when fixed in backend. 
-			// Never transforms non-head anyway.
-			files.stream().filter(fileId -> isTransformable(fileId)).forEach(fileId -> items.add(fileId.withPegRev(null)));
-			logger.info("Transform proceeding with {} of {} items in folder: {}", items.size(), files.size(), baseItemId);
+		final TransformMetrics.Recorder recorder = metrics.getRecorder(baseItemId.getRepository(), config.getName());
+		long start = System.nanoTime();
+		final TransformerService transformerService;
+		final XsltExecutable streamingExecutable;
+		if (streaming) {
+			transformerService = null;
+			streamingExecutable = getStreamingExecutable(baseItemId, stylesheet);
 		} else {
-			items.add(baseItemId);
+			transformerService = getTransformerService(baseItemId, stylesheet);
+			streamingExecutable = null;
+			// CmsItemLookupTransform will capture items with specific class, normal items will resolve via normal CmsItemLookup.
+			transformerService.setItemLookup(itemLookupTransform);
 		}
+		recorder.time(TransformMetrics.Phase.STYLESHEET, System.nanoTime() - start);
 		
-		// Locked items can be any items in the repository (any number), not just the input items.
-		final Set<CmsItemLock> locked = new HashSet<>();
+		// Incremental transforms skip items where the principal output is from the same source and stylesheet revision.
+		final boolean incremental = Boolean.parseBoolean(config.getOptions().getParams().get("incremental"));
+		final Long stylesheetRevision = incremental ? getStylesheetRevision(baseItemId, stylesheet) : null;
+		if (incremental) {
+			items = getItemsOutdated(items, sourceItems, config, stylesheetRevision);
+			if (items.isEmpty()) {
+				logger.info("Incremental transform, all outputs are current.");
+				return;
+			}
+		}
+		
+		// Existing principal output is detected before running the stylesheet, when enabled.
+		if (!Boolean.valueOf(config.getOptions().getParams().get("overwrite"))) {
+			items = getItemsPreflight(items, config);
+			if (items.isEmpty()) {
+				logger.info("Pre-flight, all principal outputs exist.");
+				return;
+			}
+		}
+		
+		final List<Set<CmsItemId>> chunks = getChunks(items, sourceItems, config);
+		final String comment = config.getOptions().getParams().get("comment");
+		for (int i = 0; i < chunks.size(); i++) {
+			if (chunks.size() > 1) {
+				String chunkComment = (comment != null ? comment + " " : "") + "(chunk " + (i + 1) + "/" + chunks.size() + ")";
+				RepoRevision r = transformChunk(baseItemId.getRepository(), chunks.get(i), config, transformerService, streamingExecutable, stylesheetRevision, sourceItems, recorder, chunkComment);
+				logger.info("Transform chunk {}/{} with {} items commited with rev: {}", i + 1, chunks.size(), chunks.get(i).size(), (r != null) ? r.getNumber() : "(unchanged)");
+			} else {
+				transformChunk(baseItemId.getRepository(), chunks.get(i), config, transformerService, streamingExecutable, stylesheetRevision, sourceItems, recorder, comment);
+			}
+		}
+		logger.debug("Extracted Tika XHTML cache hits: {} misses: {}", itemLookupTransform.getCacheHits(), itemLookupTransform.getCacheMisses());
+	}
+	
+	/**
+	 * @return the commited revision, null if all outputs were unchanged
+	 */
+	private RepoRevision transformChunk(CmsRepository repository, Set<CmsItemId> items, TransformConfig config, TransformerService transformerService, XsltExecutable streamingExecutable, Long stylesheetRevision, Map<CmsItemId, CmsItem> sourceItems, TransformMetrics.Recorder recorder, String comment) {
+		
+		// Base revision per chunk, previous chunks are commited.
+		final RepoRevision baseRevision = repoLookup.getYoungest(repository);
+		final CmsPatchset patchset = new CmsPatchset(repository, baseRevision);
+		final Set<String> folders = new HashSet<>();
+		// Outputs identical to the existing item are not commited, requires the existing items for comparing checksums.
+		final boolean skipUnchanged = Boolean.parseBoolean(config.getOptions().getParams().get("skipunchanged"));
+		final AtomicInteger unchanged = skipUnchanged ? new AtomicInteger() : null;
+		final OutputPathIndex outputIndex = new OutputPathIndex(itemLookup, repository, skipUnchanged);
+		final int parallelism = getParallelism(config);
+		// Late locking, existing items are locked just before the commit instead of during the transform.
+		final List<CmsItemPath> lockPathsDeferred = Boolean.parseBoolean(config.getOptions().getParams().get("latelock")) ? Collections.synchronizedList(new ArrayList<>()) : null;
+		
+		// Spooled result documents and compared outputs are kept until the commit is complete.
+		final boolean spool = isSpoolResultDocuments(config, streamingExecutable);
+		final Path spoolDirectory = (spool || skipUnchanged) ? createSpoolDirectory() : null;
 		try {
-			for (CmsItemId id: items) {
-				locked.addAll(transformItem(id, config, transformerService, transformOptions, patchset));
+			// Locked items can be any items in the repository (any number), not just the input items.
+			final Set<CmsItemLock> locked = new HashSet<>();
+			final TransformMessages messages = new TransformMessages(HISTORY_MSG_MAX_SIZE);
+			try {
+				if (parallelism > 1 && items.size() > 1) {
+					transformItemsParallel(items, config, transformerService, streamingExecutable, stylesheetRevision, sourceItems, recorder, patchset, folders, outputIndex, locked, messages, parallelism, spoolDirectory, lockPathsDeferred, unchanged);
+				} else {
+					for (CmsItemId id: items) {
+						locked.addAll(transformItem(id, config, transformerService, streamingExecutable, stylesheetRevision, sourceItems, recorder, messages, patchset, folders, outputIndex, spoolDirectory, lockPathsDeferred, unchanged, null));
+					}
+				}
+				if (lockPathsDeferred != null) {
+					logger.debug("Transform complete, locking {} existing items before commit.", lockPathsDeferred.size());
+					lockItems(patchset, lockPathsDeferred, locked, recorder);
+				}
+			} catch (RuntimeException e) {
+				logger.warn("Failed to transform / lock items: {}", e.getMessage(), e);
+				recorder.count(TransformMetrics.Counter.FAILURES, 1);
+				// Release all locks taken by previous iterations of the loop.
+				unlockItemsFailure(locked);
+				throw e;
 			}
-		} catch (RuntimeException e) {
-			logger.warn("Failed to transform / lock items: {}", e.getMessage(), e);
-			// Release all locks taken by previous iterations of the loop.
-			unlockItemsFailure(locked);
-			throw e;
+			
+			if (unchanged != null && unchanged.get() > 0) {
+				logger.info("Transform skipped {} unchanged outputs.", unchanged.get());
+				messages.addFirst("Unchanged outputs skipped: " + unchanged.get());
+				if (!patchset.iterator().hasNext()) {
+					logger.info("Transform resulted in no changes, skipping commit.");
+					return null;
+				}
+			}
+			
+			if (messages.getOverflow() > 0) {
+				logger.info("Transform messages exceeding the history message size: {}", messages.getOverflow());
+			}
+			String completeMessage = getCompleteMessageString(comment, messages.getMessages(), messages.getOverflow());
+			if (completeMessage != null && !completeMessage.trim().isEmpty()) {
+				patchset.setHistoryMessage(completeMessage);
+			}
+			
+			TransformCommitEvent event = new TransformCommitEvent();
+			event.begin();
+			long start = System.nanoTime();
+			RepoRevision r = commit.run(patchset);
+			recorder.time(TransformMetrics.Phase.COMMIT, System.nanoTime() - start);
+			event.end();
+			if (event.shouldCommit()) {
+				event.repository = repository.getName();
+				event.config = config.getName();
+				event.itemCount = items.size();
+				event.revision = r.getNumber();
+				event.commit();
+			}
+			logger.debug("Transform complete, commited with rev: {}", r.getNumber());
+			return r;
+		} finally {
+			deleteSpoolDirectory(spoolDirectory);
+		}
+	}
+	
+	/**
+	 * Splits the items when 'chunkitems' (number of items) and/or 'chunkbytes' (size of the source items) is configured.
+	 * @param sourceItems sizes from the folder listing, items not listed are looked up
+	 */
+	private List<Set<CmsItemId>> getChunks(Set<CmsItemId> items, Map<CmsItemId, CmsItem> sourceItems, TransformConfig config) {
+		
+		final long chunkItems = getChunkParam(config, "chunkitems");
+		final long chunkBytes = getChunkParam(config, "chunkbytes");
+		List<Set<CmsItemId>> chunks = new ArrayList<>();
+		if (chunkItems == 0 && chunkBytes == 0) {
+			chunks.add(items);
+			return chunks;
+		}
+		
+		Set<CmsItemId> chunk = new LinkedHashSet<>();
+		long bytes = 0;
+		for (CmsItemId id: items) {
+			long size = (chunkBytes > 0) ? getSourceItem(id, sourceItems).getFilesize() : 0;
+			boolean full = (chunkItems > 0 && chunk.size() >= chunkItems) || (chunkBytes > 0 && bytes + size > chunkBytes);
+			if (full && !chunk.isEmpty()) {
+				chunks.add(chunk);
+				chunk = new LinkedHashSet<>();
+				bytes = 0;
+			}
+			chunk.add(id);
+			bytes += size;
+		}
+		if (!chunk.isEmpty()) {
+			chunks.add(chunk);
 		}
+		logger.debug("Transform of {} items split into {} chunks", items.size(), chunks.size());
+		return chunks;
+	}
+	
+	private CmsItem getSourceItem(CmsItemId itemId, Map<CmsItemId, CmsItem> sourceItems) {
 		
-		List<String> messages = transformOptions.getMessageListener().getMessages();
-		String completeMessage = getCompleteMessageString(config.getOptions().getParams().get("comment"), messages);
-		if (completeMessage != null && !completeMessage.trim().isEmpty()) {
-			patchset.setHistoryMessage(completeMessage);
+		CmsItem item = sourceItems.get(itemId);
+		return (item != null) ? item : itemLookup.getItem(itemId);
+	}
+	
+	private long getChunkParam(TransformConfig config, String name) {
+		
+		String value = config.getOptions().getParams().get(name);
+		if (value == null || value.trim().isEmpty()) {
+			return 0;
 		}
 		
-		RepoRevision r = commit.run(patchset);
-		logger.debug("Transform complete, commited with rev: {}", r.getNumber());
+		final long result;
+		try {
+			result = Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("The '" + name + "' parameter must be a positive integer: " + value, e);
+		}
+		if (result < 1) {
+			throw new IllegalArgumentException("The '" + name + "' parameter must be a positive integer: " + value);
+		}
+		return result;
+	}
+
+	@Override
+	public int warmUp(CmsItemId itemId, Collection<TransformConfig> configs) {
+		
+		int count = 0;
+		for (TransformConfig config: configs) {
+			if (!config.isActive() || config.getOptions() == null || !"xsl".equals(config.getOptions().getType())) {
+				continue;
+			}
+			final String stylesheet = config.getOptions().getParams().get("stylesheet");
+			if (stylesheet == null || stylesheet.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				if (Boolean.parseBoolean(config.getOptions().getParams().get("streaming"))) {
+					getStreamingExecutable(itemId, stylesheet);
+				} else {
+					getTransformerService(itemId, stylesheet);
+				}
+				count++;
+			} catch (RuntimeException e) {
+				logger.warn("Failed to warm up stylesheet '{}' for config '{}': {}", stylesheet, config.getName(), e.getMessage());
+			}
+		}
+		logger.info("Warm up of {} stylesheets for {}, total {} compiled in {} ms.", count, itemId, stylesheetCache.getCompiles() + streamingCache.getCompiles(), stylesheetCache.getCompileMillis() + streamingCache.getCompileMillis());
+		return count;
+	}
+	
+	/**
+	 * Evicts a pinned stylesheet, it will be compiled again when used.
+	 * @param stylesheet logical id of a repository stylesheet or name of a built-in stylesheet
+	 * @return true if the stylesheet was pinned
+	 */
+	public boolean evictStylesheet(String stylesheet) {
+		boolean evicted = stylesheetCache.evict(stylesheet);
+		return streamingCache.evict(stylesheet) || evicted;
+	}
+	
+	public void evictStylesheets() {
+		stylesheetCache.evictAll();
+		streamingCache.evictAll();
+	}
+	
+	/**
+	 * Releases the threads used by streaming transforms, e.g. when the application is stopped.
+	 */
+	public void shutdown() {
+		transformStreaming.shutdown();
 	}
 
 	@Override
@@ -268,23 +600,40 @@ public class TransformServiceXsl implements TransformService {
 			throw new IllegalArgumentException("Either the folder must be a shardparent with a name pattern or a 'pathnamebase' parameter must be supplied.");
 		}
 
+		final TransformMetrics.Recorder recorder = metrics.getRecorder(repository, IMPORT_METRICS_NAME);
 		final Set<CmsItemLock> locked = new HashSet<>();
 		try {
+			recorder.count(TransformMetrics.Counter.ITEMS, 1);
 			InputStream stream;
 			if (url != null && !url.trim().isEmpty()) {
 				// The file content is to be downloaded from the provided URL
+				long start = System.nanoTime();
 				stream = download(url);
+				recorder.time(TransformMetrics.Phase.DOWNLOAD, System.nanoTime() - start);
 			} else if (content != null && !content.isEmpty()) {
 				// The file contents are already provided
 				stream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
 			} else {
 				throw new IllegalArgumentException("Import requires either a valid URL or content.");
 			}
-			CmsItemLock lock = addToPatchset(patchset, relPath, stream, overwrite, properties);
-			if (lock != null) locked.add(lock);
+			List<CmsItemPath> lockPaths = new ArrayList<>();
+			addToPatchset(patchset, new HashSet<>(), relPath.getParent(), null, relPath, stream, overwrite, properties, lockPaths, null, null, recorder);
+			lockItems(patchset, lockPaths, locked, recorder);
 			String comment = config.getParams().get("comment");
 			if (comment != null && !comment.trim().isEmpty()) patchset.setHistoryMessage(comment);
+			TransformCommitEvent event = new TransformCommitEvent();
+			event.begin();
+			long start = System.nanoTime();
 			RepoRevision r = commit.run(patchset);
+			recorder.time(TransformMetrics.Phase.COMMIT, System.nanoTime() - start);
+			event.end();
+			if (event.shouldCommit()) {
+				event.repository = repository.getName();
+				event.config = IMPORT_METRICS_NAME;
+				event.itemCount = 1;
+				event.revision = r.getNumber();
+				event.commit();
+			}
 			if (url != null && !url.trim().isEmpty()) {
 				logger.info("Import URL complete: {} -> {}, committed with rev: {}", url, relPath, r.getNumber());
 			} else {
@@ -293,10 +642,12 @@ public class TransformServiceXsl implements TransformService {
 			response.add(new CmsItemIdArg(repository, relPath).withPegRev(r.getNumber()));
 		} catch (IOException | URISyntaxException | InterruptedException e) {
 			logger.error("Failed to download content from URL: {}", url, e);
+			recorder.count(TransformMetrics.Counter.FAILURES, 1);
 			unlockItemsFailure(locked);
 			throw new RuntimeException("Failed to download content from URL: " + url, e);
 		} catch (RuntimeException e) {
 			logger.warn("Failed to import item: {}", e.getMessage(), e);
+			recorder.count(TransformMetrics.Counter.FAILURES, 1);
 			unlockItemsFailure(locked);
 			throw e;
 		}
@@ -318,7 +669,15 @@ public class TransformServiceXsl implements TransformService {
 				.GET()
 				.build();
 
+		TransformDownloadEvent event = new TransformDownloadEvent();
+		event.begin();
 		HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+		event.end();
+		if (event.shouldCommit()) {
+			event.url = url;
+			event.statusCode = response.statusCode();
+			event.commit();
+		}
 
 		if (response.statusCode() == 200) {
 			return response.body();
@@ -328,6 +687,94 @@ public class TransformServiceXsl implements TransformService {
 	}
 
 
+	/**
+	 * Lists the folder once including properties, with fallback to concurrent lookups for backends that can not provide properties in bulk.
+	 * @return transformable files in listing order, with the listed item (null when the backend can not list items)
+	 */
+	private Map<CmsItemId, CmsItem> getTransformableItems(CmsItemId folderId) {
+		
+		Set<CmsItem> children;
+		try {
+			children = itemLookup.getImmediates(folderId);
+		} catch (UnsupportedOperationException e) {
+			logger.debug("Backend does not support listing with properties, looking up items: {}", e.getMessage());
+			children = null;
+		}
+		
+		// Filtering based on CmsItemClassificationXml in combination with tikahtml cms:class.
+		final CmsItemClassificationXml classification = new CmsItemClassificationXml();
+		final Map<CmsItemId, Boolean> classified = new LinkedHashMap<>();
+		final Map<CmsItemId, CmsItem> listed = new HashMap<>();
+		final List<CmsItemId> lookup = new ArrayList<>();
+		if (children != null) {
+			for (CmsItem child: children) {
+				if (child.getKind() != CmsItemKind.File) {
+					continue;
+				}
+				CmsItemId fileId = child.getId();
+				listed.put(fileId, child);
+				if (classification.isXml(fileId)) {
+					classified.put(fileId, true);
+				} else if (child.getProperties() != null) {
+					classified.put(fileId, child.isCmsClass("tikahtml"));
+				} else {
+					classified.put(fileId, null);
+					lookup.add(fileId);
+				}
+			}
+		} else {
+			for (CmsItemId fileId: itemLookup.getImmediateFiles(folderId)) {
+				if (classification.isXml(fileId)) {
+					classified.put(fileId, true);
+				} else {
+					classified.put(fileId, null);
+					lookup.add(fileId);
+				}
+			}
+		}
+		
+		if (!lookup.isEmpty()) {
+			classified.putAll(getTransformableConcurrent(lookup));
+		}
+		
+		// Workaround for backend returning itemIds with p=-1, remove when fixed in backend. 
+		// Never transforms non-head anyway.
+		Map<CmsItemId, CmsItem> items = new LinkedHashMap<>();
+		classified.forEach((fileId, transformable) -> {
+			if (transformable) {
+				items.put(fileId.withPegRev(null), listed.get(fileId));
+			}
+		});
+		logger.info("Transform proceeding with {} of {} items in folder: {} ({} individual lookups)", items.size(), classified.size(), folderId, lookup.size());
+		return items;
+	}
+	
+	private Map<CmsItemId, Boolean> getTransformableConcurrent(List<CmsItemId> fileIds) {
+		
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(LOOKUP_CONCURRENCY_MAX, fileIds.size()));
+		try {
+			final List<Future<Boolean>> futures = new ArrayList<>(fileIds.size());
+			for (CmsItemId fileId: fileIds) {
+				futures.add(executor.submit(() -> isTransformable(fileId)));
+			}
+			
+			final Map<CmsItemId, Boolean> result = new LinkedHashMap<>();
+			for (int i = 0; i < fileIds.size(); i++) {
+				try {
+					result.put(fileIds.get(i), futures.get(i).get());
+				} catch (ExecutionException e) {
+					throw getRuntimeException(e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while looking up items.", e);
+				}
+			}
+			return result;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
 	private boolean isTransformable(CmsItemId itemId) {
 		
 		CmsItemClassificationXml classification = new CmsItemClassificationXml();
@@ -338,31 +785,71 @@ public class TransformServiceXsl implements TransformService {
 		return item.isCmsClass("tikahtml");
     }
 	
-	private Set<CmsItemLock> transformItem(CmsItemId baseItemId, TransformConfig config, TransformerService transformerService, TransformOptions transformOptions, CmsPatchset patchset) {
+	/**
+	 * @param streamingExecutable streamable stylesheet, when set the transformerService is not used
+	 * @param outputIndex existing output files, shared by all items in the transform
+	 * @param spoolDirectory for result documents and compared outputs, removed when the commit is complete
+	 * @param lockPathsDeferred existing items to lock later, null to lock when the item is transformed
+	 * @param unchanged counts outputs identical to the existing item, null to always overwrite
+	 * @param aborted set when another item of a parallel transform has failed, null when sequential
+	 */
+	private Set<CmsItemLock> transformItem(CmsItemId baseItemId, TransformConfig config, TransformerService transformerService, XsltExecutable streamingExecutable, Long stylesheetRevision, Map<CmsItemId, CmsItem> sourceItems, TransformMetrics.Recorder recorder, TransformMessages messages, CmsPatchset patchset, Set<String> folders, OutputPathIndex outputIndex, Path spoolDirectory, List<CmsItemPath> lockPathsDeferred, AtomicInteger unchanged, AtomicBoolean aborted) {
 		
 		logger.debug("Transforming itemid: {}", baseItemId);
-		final CmsItemPropertiesMap props = getProperties(baseItemId, config);
+		final CmsItemPropertiesMap props = getProperties(baseItemId, config, stylesheetRevision, sourceItems);
 		// Output path can be null if explicitly set to empty string.
 		final CmsItemPath outputPath = getOutputPath(baseItemId, config.getOptions().getParams().get("output"));
 		final boolean overwrite = Boolean.valueOf(config.getOptions().getParams().get("overwrite"));
+		// The output.xsl second pass is replaced by TransformOutputSerializer only when requested, spooled result documents are always native.
+		final boolean outputXsl = isSerializerXsl(config);
 		final Set<CmsItemLock> locked = new HashSet<>();
+		// Existing items are locked when all output of the item is known.
+		final List<CmsItemPath> lockPaths = new ArrayList<>();
+		// Options per item, the messages of the item are added to the bounded capture after the transform.
+		final TransformOptions transformOptions = new TransformOptions();
 		
-		SaxonOutputURIResolverXdm outputURIResolver = new SaxonOutputURIResolverXdm(sourceReader);
-		transformOptions.setOutputURIResolver(outputURIResolver);
+		final SaxonOutputURIResolverXdm outputURIResolver;
+		final SaxonOutputURIResolverSpool outputURIResolverSpool;
+		if (isSpoolResultDocuments(config, streamingExecutable)) {
+			outputURIResolver = null;
+			outputURIResolverSpool = new SaxonOutputURIResolverSpool(processor, spoolDirectory, OUTPUT_SPOOL_MEMORY_MAX_SIZE);
+			transformOptions.setOutputURIResolver(outputURIResolverSpool);
+		} else {
+			outputURIResolver = new SaxonOutputURIResolverXdm(sourceReader);
+			outputURIResolverSpool = null;
+			transformOptions.setOutputURIResolver(outputURIResolver);
+		}
 		
+		final TransformItemEvent itemEvent = new TransformItemEvent();
+		itemEvent.begin();
+		boolean success = false;
+		int outputCount = 0;
 		try {
 			
-			TransformStreamProvider baseStreamProvider = transformerService.getTransformStreamProvider(baseItemId, transformOptions);
+			// Items referenced without revision resolve to the base revision, consistent across the items of the transform.
+			itemLookupTransform.setRevision(patchset.getBaseRevision().getNumber());
+			recorder.count(TransformMetrics.Counter.ITEMS, 1);
+			long start = System.nanoTime();
+			InputStream baseStream;
+			if (streamingExecutable != null) {
+				// Result documents are always spooled when streaming.
+				CmsItem baseItem = itemLookupTransform.getItem(baseItemId);
+				baseStream = transformStreaming.transform(streamingExecutable, baseItem, outputURIResolverSpool, spoolDirectory, OUTPUT_SPOOL_MEMORY_MAX_SIZE, messages);
+			} else {
+				TransformStreamProvider baseStreamProvider = transformerService.getTransformStreamProvider(baseItemId, transformOptions);
+				baseStream = baseStreamProvider.get();
+				messages.addAll(transformOptions.getMessageListener().getMessages());
+			}
+			recorder.time(TransformMetrics.Phase.TRANSFORM, System.nanoTime() - start);
 			// Detects empty stream and aborts them via EmptyStreamException, which is caught and logged as warning.
 			// Assume only non-principal output if the output path is explicitly set to repo root.
 			if (outputPath != null) {
-				locked.add(addToPatchset(patchset, outputPath.append(baseItemId.getRelPath().getName()), baseStreamProvider.get(), overwrite, props));
-			} else {
-				// Discard the principal output.
-				baseStreamProvider.get();
+				addToPatchset(patchset, folders, outputPath, outputIndex, outputPath.append(baseItemId.getRelPath().getName()), baseStream, overwrite, props, lockPaths, unchanged, spoolDirectory, recorder);
 			}
+			// Otherwise discard the principal output.
 			
-			Set<String> resultDocsHrefs = outputURIResolver.getResultDocumentHrefs();
+			Set<String> resultDocsHrefs = (outputURIResolverSpool != null) ? outputURIResolverSpool.getResultDocumentHrefs() : outputURIResolver.getResultDocumentHrefs();
+			outputCount = resultDocsHrefs.size() + (outputPath != null ? 1 : 0);
 			for (String href: resultDocsHrefs) {
 				if (href.startsWith("/") && outputPath != null) {
 					throw new IllegalArgumentException("Relative href must not start with slash: " + href);
@@ -379,18 +866,267 @@ public class TransformServiceXsl implements TransformService {
 					}
 				}
 				
-				XmlSourceDocumentS9api resultDocument = outputURIResolver.getResultDocument(href);
-				TransformStreamProvider streamProvider = transformerOutput.getTransformStreamProvider(resultDocument, null);
-				locked.add(addToPatchset(patchset, path, streamProvider.get(), overwrite, props));
+				InputStream resultStream;
+				TransformSerializeEvent serializeEvent = new TransformSerializeEvent();
+				serializeEvent.begin();
+				start = System.nanoTime();
+				if (outputURIResolverSpool != null) {
+					// Already serialized when the result document was closed.
+					resultStream = getResultDocumentSpooled(outputURIResolverSpool, href);
+				} else if (outputXsl) {
+					XmlSourceDocumentS9api resultDocument = outputURIResolver.getResultDocument(href);
+					TransformStreamProvider streamProvider = transformerOutput.getTransformStreamProvider(resultDocument, null);
+					resultStream = streamProvider.get();
+				} else {
+					XmlSourceDocumentS9api resultDocument = outputURIResolver.getResultDocument(href);
+					resultStream = getResultDocumentSerialized(resultDocument, href);
+				}
+				recorder.time(TransformMetrics.Phase.SERIALIZE, System.nanoTime() - start);
+				serializeEvent.end();
+				if (serializeEvent.shouldCommit()) {
+					serializeEvent.itemId = baseItemId.getLogicalId();
+					serializeEvent.href = href;
+					serializeEvent.size = getResultDocumentSize(outputURIResolverSpool, href, resultStream);
+					serializeEvent.commit();
+				}
+				addToPatchset(patchset, folders, outputPath, outputIndex, path, resultStream, overwrite, props, lockPaths, unchanged, spoolDirectory, recorder);
+			}
+			if (lockPathsDeferred != null) {
+				lockPathsDeferred.addAll(lockPaths);
+			} else {
+				if (aborted != null && aborted.get()) {
+					throw new IllegalStateException("Transform aborted before locking, another item failed: " + baseItemId);
+				}
+				lockItems(patchset, lockPaths, locked, recorder);
 			}
+			success = true;
 		} catch (RuntimeException e) {
+			if (outputURIResolverSpool != null) {
+				outputURIResolverSpool.discard();
+			}
 			// Unlock locks taken in this invocation of transformItem.
 			unlockItemsFailure(locked);
 			throw e;
+		} finally {
+			itemLookupTransform.setRevision(null);
+			itemEvent.end();
+			if (itemEvent.shouldCommit()) {
+				itemEvent.itemId = baseItemId.getLogicalId();
+				itemEvent.stylesheet = config.getOptions().getParams().get("stylesheet");
+				itemEvent.config = config.getName();
+				// No lookup here, the item event must not replace the transform failure.
+				CmsItem sourceItem = sourceItems.get(baseItemId);
+				itemEvent.size = (sourceItem != null) ? sourceItem.getFilesize() : -1;
+				itemEvent.outputCount = outputCount;
+				itemEvent.success = success;
+				itemEvent.commit();
+			}
 		}
 		return locked;
 	}
 	
+	/**
+	 * Transforms the items concurrently, each item into a separate patchset with separate TransformOptions.
+	 * The results are merged into the patchset in the iteration order of items, regardless of completion order.
+	 * On failure, the remaining items are aborted before locking and all tasks are awaited, 
+	 * the locks taken by any item are added to locked before throwing. 
+	 */
+	private void transformItemsParallel(Set<CmsItemId> items, TransformConfig config, TransformerService transformerService, XsltExecutable streamingExecutable, Long stylesheetRevision, Map<CmsItemId, CmsItem> sourceItems, TransformMetrics.Recorder recorder, CmsPatchset patchset, Set<String> folders, OutputPathIndex outputIndex, Set<CmsItemLock> locked, TransformMessages messages, int parallelism, Path spoolDirectory, List<CmsItemPath> lockPathsDeferred, AtomicInteger unchanged) {
+		
+		final int threads = Math.min(parallelism, items.size());
+		logger.info("Transform proceeding with parallelism {} for {} items.", threads, items.size());
+		
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final List<Future<ItemTransformResult>> futures = new ArrayList<>(items.size());
+		// Checked by the tasks, running tasks are not interrupted since they might be writing to the backend.
+		final AtomicBoolean aborted = new AtomicBoolean();
+		RuntimeException failure = null;
+		boolean interrupted = false;
+		try {
+			for (CmsItemId id: items) {
+				futures.add(executor.submit(() -> {
+					CmsPatchset itemPatchset = new CmsPatchset(patchset.getRepository(), patchset.getBaseRevision());
+					TransformMessages itemMessages = new TransformMessages(HISTORY_MSG_MAX_SIZE);
+					if (aborted.get()) {
+						return new ItemTransformResult(itemPatchset, Collections.emptySet(), itemMessages);
+					}
+					Set<CmsItemLock> itemLocked = transformItem(id, config, transformerService, streamingExecutable, stylesheetRevision, sourceItems, recorder, itemMessages, itemPatchset, new HashSet<>(), outputIndex, spoolDirectory, lockPathsDeferred, unchanged, aborted);
+					return new ItemTransformResult(itemPatchset, itemLocked, itemMessages);
+				}));
+			}
+			
+			// Waits for every task, also after a failure, in order to collect all locks.
+			for (Future<ItemTransformResult> future: futures) {
+				ItemTransformResult result = null;
+				boolean done = false;
+				while (!done) {
+					try {
+						result = future.get();
+						done = true;
+					} catch (ExecutionException e) {
+						if (failure == null) {
+							failure = getRuntimeException(e.getCause());
+						}
+						aborted.set(true);
+						done = true;
+					} catch (InterruptedException e) {
+						interrupted = true;
+						if (failure == null) {
+							failure = new RuntimeException("Interrupted while waiting for transform of items.", e);
+						}
+						aborted.set(true);
+					}
+				}
+				if (result == null) {
+					continue;
+				}
+				// Locks must be released on failure even if they are not merged.
+				locked.addAll(result.locked);
+				if (failure == null) {
+					try {
+						mergePatchset(patchset, folders, result.patchset, result.locked);
+						messages.addAll(result.messages);
+					} catch (RuntimeException e) {
+						failure = e;
+						aborted.set(true);
+					}
+				}
+			}
+		} finally {
+			aborted.set(true);
+			executor.shutdown();
+			awaitTermination(executor);
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		if (failure != null) {
+			throw failure;
+		}
+	}
+	
+	private void awaitTermination(ExecutorService executor) {
+		try {
+			if (!executor.awaitTermination(EXECUTOR_TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				logger.warn("Transform tasks did not terminate within {} seconds.", EXECUTOR_TERMINATION_TIMEOUT_SECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Interrupted while waiting for transform tasks to terminate.");
+		}
+	}
+	
+	private void mergePatchset(CmsPatchset patchset, Set<String> folders, CmsPatchset itemPatchset, Set<CmsItemLock> itemLocked) {
+		
+		for (CmsPatchItem patchItem: itemPatchset) {
+			if (patchItem instanceof FolderExist) {
+				// Multiple items are likely to share output folders.
+				addFolderExists(patchset, folders, patchItem.getPath(), patchItem.getPath());
+			} else {
+				patchset.add(patchItem);
+			}
+		}
+		for (CmsItemLock lock: itemLocked) {
+			if (lock != null) {
+				patchset.addLock(lock);
+			}
+		}
+	}
+	
+	private RuntimeException getRuntimeException(Throwable cause) {
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new RuntimeException("Failed to transform item: " + cause.getMessage(), cause);
+	}
+	
+	private int getParallelism(TransformConfig config) {
+		
+		final String value = config.getOptions().getParams().get("parallelism");
+		if (value == null || value.trim().isEmpty()) {
+			return 1;
+		}
+		
+		final int parallelism;
+		try {
+			parallelism = Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("The 'parallelism' parameter must be a positive integer: " + value, e);
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The 'parallelism' parameter must be a positive integer: " + value);
+		}
+		// Bounded by the number of processors, the transforms are CPU bound.
+		return Math.min(parallelism, Runtime.getRuntime().availableProcessors());
+	}
+	
+	private InputStream getResultDocumentSerialized(XmlSourceDocumentS9api resultDocument, String href) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			TransformOutputSerializer.serialize(processor, resultDocument.getXdmDoc(), out);
+		} catch (SaxonApiException e) {
+			throw new RuntimeException("Failed to serialize result document: " + href, e);
+		}
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+	
+	private InputStream getResultDocumentSpooled(SaxonOutputURIResolverSpool outputURIResolverSpool, String href) {
+		try {
+			return outputURIResolverSpool.getResultDocument(href);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to read spooled result document: " + href, e);
+		}
+	}
+	
+	/**
+	 * @return the serialized size, -1 for output.xsl where the size is not known until read
+	 */
+	private long getResultDocumentSize(SaxonOutputURIResolverSpool outputURIResolverSpool, String href, InputStream resultStream) {
+		if (outputURIResolverSpool != null) {
+			return outputURIResolverSpool.getResultDocumentSize(href);
+		}
+		return (resultStream instanceof ByteArrayInputStream) ? ((ByteArrayInputStream) resultStream).available() : -1;
+	}
+	
+	private boolean isSerializerXsl(TransformConfig config) {
+		
+		final String serializer = config.getOptions().getParams().getOrDefault("serializer", "xsl");
+		if (!"xsl".equals(serializer) && !"native".equals(serializer)) {
+			throw new IllegalArgumentException("The 'serializer' parameter must be 'xsl' or 'native': " + serializer);
+		}
+		return "xsl".equals(serializer);
+	}
+	
+	/**
+	 * Result documents are spooled when configured, always when streaming.
+	 */
+	private boolean isSpoolResultDocuments(TransformConfig config, XsltExecutable streamingExecutable) {
+		return Boolean.parseBoolean(config.getOptions().getParams().get("spool")) || streamingExecutable != null;
+	}
+	
+	private Path createSpoolDirectory() {
+		try {
+			return Files.createTempDirectory("cms-transform-");
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to create directory for spooling result documents.", e);
+		}
+	}
+	
+	private void deleteSpoolDirectory(Path spoolDirectory) {
+		if (spoolDirectory == null) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(spoolDirectory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		} catch (IOException e) {
+			logger.warn("Failed to delete spool directory: {}", spoolDirectory, e);
+		}
+	}
+	
 	private void unlockItemsFailure(Set<CmsItemLock> locked) {
 		logger.info("Transform failed, unlocking {} items.", locked.size());
 		try {
@@ -400,11 +1136,14 @@ public class TransformServiceXsl implements TransformService {
 		}
 	}
 	
-	private String getCompleteMessageString(String comment, List<String> messages) {
+	/**
+	 * @param more number of messages that were not retained, see {@link TransformMessages}
+	 */
+	static String getCompleteMessageString(String comment, List<String> messages, int more) {
 		StringBuilder sb = new StringBuilder();
 		sb.append(comment);
 		
-		if (!messages.isEmpty()) {
+		if (!messages.isEmpty() || more > 0) {
 			sb.append("\n");
 		}
 		
@@ -419,37 +1158,65 @@ public class TransformServiceXsl implements TransformService {
 					addMoreMessages = iterator.hasNext();
 				} else {
 					logger.info("Max history message size ({}) reached truncating", HISTORY_MSG_MAX_SIZE);
-					sb.append("\n");
-					sb.append("...");
+					more++;
+					while (iterator.hasNext()) {
+						String remaining = iterator.next();
+						if (remaining != null && !remaining.trim().isEmpty()) {
+							more++;
+						}
+					}
 					addMoreMessages = false;
 				}
+			} else {
+				addMoreMessages = iterator.hasNext();
 			}
 		}
+		if (more > 0) {
+			sb.append("\n");
+			sb.append(more);
+			sb.append(" more messages...");
+		}
 		return sb.toString();
 	}
 
 
-	private CmsItemLock addToPatchset(CmsPatchset patchset, CmsItemPath relPath, InputStream stream, boolean overwrite, CmsItemPropertiesMap properties) {
-		CmsItemLock lock = null;
+	/**
+	 * @param folders paths of folders in the patchset, see {@link #addFolderExists(CmsPatchset, Set, CmsItemPath, CmsItemPath)}
+	 * @param outputPath the validated output folder, null for repository root
+	 * @param outputIndex existing output files, null to look up the path
+	 * @param lockPaths existing files that must be locked, see {@link #lockItems(CmsPatchset, Collection, Set, TransformMetrics.Recorder)}
+	 * @param unchanged counts existing files with identical content, which are left out of the patchset, null to always overwrite
+	 * @param spoolDirectory for spooling the content while comparing, required when unchanged is set
+	 */
+	private void addToPatchset(CmsPatchset patchset, Set<String> folders, CmsItemPath outputPath, OutputPathIndex outputIndex, CmsItemPath relPath, InputStream stream, boolean overwrite, CmsItemPropertiesMap properties, Collection<CmsItemPath> lockPaths, AtomicInteger unchanged, Path spoolDirectory, TransformMetrics.Recorder recorder) {
 		try {
-			final InputStream inputStream = getInputStreamNotEmpty(stream);
-			boolean pathExists = pathExists(patchset.getRepository(), relPath);
+			InputStream inputStream = getInputStreamNotEmpty(stream);
+			long start = System.nanoTime();
+			boolean pathExists = (outputIndex != null) ? outputIndex.exists(relPath) : pathExists(patchset.getRepository(), relPath);
+			recorder.time(TransformMetrics.Phase.EXISTS, System.nanoTime() - start);
 			if (!pathExists) {
-				addFolderExists(patchset, relPath.getParent());
+				addFolderExists(patchset, folders, outputPath, relPath.getParent());
 				logger.debug("No file at path: '{}' will add new file.", relPath);
-				FileAdd fileAdd = new FileAdd(relPath, inputStream);
+				recorder.count(TransformMetrics.Counter.OUTPUTS, 1);
+				FileAdd fileAdd = new FileAdd(relPath, new TransformMetricsInputStream(inputStream, recorder));
 				fileAdd.setPropertyChange(properties);
 				patchset.add(fileAdd);
 			} else if (overwrite){
-				logger.debug("Overwrite is allowed, existing file at path '{}' will be modified.", relPath.getPath());
-				CmsItemId itemId = patchset.getRepository().getItemId().withRelPath(relPath);
-				CmsItemLockCollection locks = commit.lock(TRANSFORM_LOCK_COMMENT, patchset.getBaseRevision(), itemId.getRelPath());
-				if (locks != null && locks.getSingle() == null) {
-					throw new IllegalStateException("Unable to retrieve the lock token after locking " + itemId);
+				if (unchanged != null) {
+					CmsItem existing = (outputIndex != null) ? outputIndex.getItem(relPath) : itemLookup.getItem(patchset.getRepository().getItemId().withRelPath(relPath));
+					// Property changes are commited also when the content is identical, e.g. incremental revisions.
+					final boolean propertiesChanged = isPropertiesChanged(existing, properties);
+					inputStream = getInputStreamChanged(existing, inputStream, propertiesChanged, spoolDirectory);
+					if (inputStream == null) {
+						logger.debug("Existing file at path '{}' is unchanged, will not be modified.", relPath.getPath());
+						unchanged.incrementAndGet();
+						return;
+					}
 				}
-				lock = locks.getSingle();
-				patchset.addLock(lock);
-				FileModificationLocked fileMod = new FileModificationLocked(relPath, inputStream);
+				logger.debug("Overwrite is allowed, existing file at path '{}' will be modified.", relPath.getPath());
+				lockPaths.add(relPath);
+				recorder.count(TransformMetrics.Counter.OUTPUTS, 1);
+				FileModificationLocked fileMod = new FileModificationLocked(relPath, new TransformMetricsInputStream(inputStream, recorder));
 				fileMod.setPropertyChange(properties);
 				patchset.add(fileMod);
 			} else {
@@ -458,9 +1225,131 @@ public class TransformServiceXsl implements TransformService {
 		} catch (IOException e) {
 			throw new RuntimeException("Failed to read stream from transform.", e);
 		} catch (EmptyStreamException e) {
+			recorder.count(TransformMetrics.Counter.EMPTY, 1);
 			logger.warn("Transform of item at path: '{}'  resulted in empty document, will be discarded.", relPath);
 		}
-		return lock;
+	}
+	
+	/**
+	 * Compares the content with the checksum of the existing item, SHA-1 if available.
+	 * @param keepUnchanged returns the content also when identical, e.g. when properties are changed
+	 * @return the content, or null if identical to the existing item
+	 */
+	private InputStream getInputStreamChanged(CmsItem existing, InputStream inputStream, boolean keepUnchanged, Path spoolDirectory) throws IOException {
+		
+		final Checksum checksum = existing.getChecksum();
+		final String expected;
+		final String algorithm;
+		if (checksum != null && checksum.has(Checksum.Algorithm.SHA1)) {
+			expected = checksum.getSha1();
+			algorithm = "SHA-1";
+		} else if (checksum != null && checksum.has(Checksum.Algorithm.MD5)) {
+			expected = checksum.getMd5();
+			algorithm = "MD5";
+		} else {
+			logger.debug("No checksum for existing item, can not compare: {}", existing.getId());
+			return inputStream;
+		}
+		
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Digest not available: " + algorithm, e);
+		}
+		
+		// The content is spooled while digesting, large outputs are not kept in memory.
+		TransformOutputSpool spool = new TransformOutputSpool(spoolDirectory, OUTPUT_SPOOL_MEMORY_MAX_SIZE);
+		try (InputStream in = inputStream) {
+			byte[] buffer = new byte[8192];
+			int len;
+			while ((len = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, len);
+				spool.write(buffer, 0, len);
+			}
+			spool.close();
+		} catch (IOException e) {
+			spool.discard();
+			throw e;
+		}
+		
+		if (toHex(digest.digest()).equalsIgnoreCase(expected)) {
+			if (keepUnchanged) {
+				logger.debug("Existing item has identical content but different properties: {}", existing.getId());
+				return spool.getInputStream();
+			}
+			spool.discard();
+			return null;
+		}
+		return spool.getInputStream();
+	}
+	
+	static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b: bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @return true if any of the properties is missing or different on the existing item
+	 */
+	static boolean isPropertiesChanged(CmsItem existing, CmsItemProperties properties) {
+		
+		if (properties == null) {
+			return false;
+		}
+		CmsItemProperties existingProperties = existing.getProperties();
+		for (String key: properties.getKeySet()) {
+			if (existingProperties == null || !Objects.equals(properties.getString(key), existingProperties.getString(key))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Locks the paths in sorted order, with a single backend call per batch of paths.
+	 * @param locked receives the locks as they are acquired, in order to unlock on failure
+	 */
+	private void lockItems(CmsPatchset patchset, Collection<CmsItemPath> lockPaths, Set<CmsItemLock> locked, TransformMetrics.Recorder recorder) {
+		
+		if (lockPaths.isEmpty()) {
+			return;
+		}
+		List<CmsItemPath> sorted = new ArrayList<>(lockPaths);
+		sorted.sort(Comparator.comparing(CmsItemPath::getPath));
+		
+		for (int i = 0; i < sorted.size(); i += LOCK_BATCH_MAX_SIZE) {
+			List<CmsItemPath> batch = sorted.subList(i, Math.min(i + LOCK_BATCH_MAX_SIZE, sorted.size()));
+			TransformLockEvent event = new TransformLockEvent();
+			event.begin();
+			long start = System.nanoTime();
+			CmsItemLockCollection locks = commit.lock(TRANSFORM_LOCK_COMMENT, patchset.getBaseRevision(), batch.toArray(new CmsItemPath[0]));
+			recorder.time(TransformMetrics.Phase.LOCK, System.nanoTime() - start);
+			event.end();
+			int count = 0;
+			if (locks != null) {
+				for (CmsItemLock lock: locks) {
+					locked.add(lock);
+					patchset.addLock(lock);
+					count++;
+				}
+			}
+			recorder.count(TransformMetrics.Counter.LOCKS, count);
+			if (event.shouldCommit()) {
+				event.repository = patchset.getRepository().getName();
+				event.path = batch.get(0).getPath();
+				event.lockCount = count;
+				event.commit();
+			}
+			if (count != batch.size()) {
+				throw new IllegalStateException("Unable to retrieve the lock tokens after locking " + batch.size() + " items, got: " + count);
+			}
+			logger.debug("Locked {} items in batch starting with: {}", batch.size(), batch.get(0));
+		}
 	}
 	
 	private CmsItemPath getOutputPath(CmsItemId itemId, String output) {
@@ -481,6 +1370,29 @@ public class TransformServiceXsl implements TransformService {
 		return pathResult;
 	}
 
+	/**
+	 * Streaming compiles repository stylesheets without the TransformerServiceFactory, built-in stylesheets are not streamable.
+	 * Pinned per revision in the same way as {@link #getTransformerService(CmsItemId, String)}.
+	 */
+	private XsltExecutable getStreamingExecutable(CmsItemId itemId, String stylesheet) {
+		
+		transformStreaming.validateProcessor();
+		if (!stylesheet.startsWith("/")) {
+			throw new IllegalArgumentException("The 'streaming' param requires a stylesheet in the repository: " + stylesheet);
+		}
+		
+		CmsItemId styleSheetItemId = itemId.getRepository().getItemId().withRelPath(new CmsItemPath(stylesheet));
+		CmsItem styleSheetItem;
+		try {
+			styleSheetItem = itemLookup.getItem(styleSheetItemId);
+		} catch (CmsItemNotFoundException e) {
+			throw new IllegalArgumentException("Specified stylesheet does not exist at path: " + stylesheet, e);
+		}
+		final CmsItem item = styleSheetItem;
+		// Pinned until the stylesheet or one of its included / imported modules is changed.
+		return streamingCache.get(styleSheetItemId.getLogicalId(), stylesheetModules.getRevision(item), () -> transformStreaming.compile(item));
+	}
+	
 	private TransformerService getTransformerService(CmsItemId itemId, String stylesheet) {
 		
 		TransformerService resultService;
@@ -497,11 +1409,13 @@ public class TransformServiceXsl implements TransformService {
 			}
 			
 			// #1367 Now using a stylesheet factory method that provides caching without reading the content.
-			resultService = transformerServiceFactory.buildTransformerService(styleSheetItem);
+			// Pinned until the stylesheet is changed, the factory cache might evict large stylesheets.
+			final CmsItem item = styleSheetItem;
+			resultService = stylesheetCache.get(styleSheetItemId.getLogicalId(), styleSheetItem.getRevisionChanged().getNumber(), () -> transformerServiceFactory.buildTransformerService(item));
 		} else {
 			// TODO: Guard against very long string 'stylesheet'.
 			// Use named built-in stylesheet.
-			resultService = transformerServiceFactory.buildTransformerService(stylesheet);
+			resultService = stylesheetCache.get(stylesheet, null, () -> transformerServiceFactory.buildTransformerService(stylesheet));
 		}
 		
 		return resultService;
@@ -522,7 +1436,7 @@ public class TransformServiceXsl implements TransformService {
 		return result;
 	}
 	
-	private InputStream getInputStreamNotEmpty(InputStream inputStream) throws IOException, EmptyStreamException {
+	static InputStream getInputStreamNotEmpty(InputStream inputStream) throws IOException, EmptyStreamException {
 		int maxRead = 200;
 		PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream, maxRead);
 		byte[] bytes = new byte[maxRead];
@@ -538,16 +1452,27 @@ public class TransformServiceXsl implements TransformService {
 		return pushbackInputStream;
 	}
 
-	private boolean emptyExceptDeclaration(String data) {
+	static boolean emptyExceptDeclaration(String data) {
 		return data.substring(data.indexOf("?>") + 2).trim().isEmpty();
 	}
 	
-	private CmsItemPropertiesMap getProperties(CmsItemId baseId, TransformConfig config) {
+	/**
+	 * @param stylesheetRevision revision of a repository stylesheet, only used for incremental transforms
+	 * @param sourceItems items already listed or looked up, only used for incremental transforms
+	 */
+	private CmsItemPropertiesMap getProperties(CmsItemId baseId, TransformConfig config, Long stylesheetRevision, Map<CmsItemId, CmsItem> sourceItems) {
 		
 		CmsItemPropertiesMap m = new CmsItemPropertiesMap();
 		final boolean propertiesSuppress = Boolean.valueOf(config.getOptions().getParams().get("PropertiesSuppress"));
+		final boolean incremental = Boolean.parseBoolean(config.getOptions().getParams().get("incremental"));
 		
-		// TODO: Include rev if configured to do so.
+		// Revisions are only included for incremental transforms, they cause commit on items that have not changed.
+		if (incremental && !propertiesSuppress) {
+			m.put(TRANSFORM_BASE_REVISION_PROP_KEY, Long.toString(getSourceItem(baseId, sourceItems).getRevisionChanged().getNumber()));
+			if (stylesheetRevision != null) {
+				m.put(TRANSFORM_STYLESHEET_REVISION_PROP_KEY, stylesheetRevision.toString());
+			}
+		}
 		baseId = baseId.withPegRev(null); // Remove revision to avoid commit on items that have not changed.
 		
 		if (!propertiesSuppress) {
@@ -557,19 +1482,135 @@ public class TransformServiceXsl implements TransformService {
 		return m;
 	}
 	
-	private void addFolderExists(CmsPatchset patchset, CmsItemPath parentPath) {
-		Iterator<CmsPatchItem> iterator = patchset.iterator();
-		boolean addFolderExist = true;
-		while (iterator.hasNext() && addFolderExist) {
-			CmsPatchItem next = iterator.next();
-			if (next instanceof FolderExist && next.getPath().compareTo(parentPath) == 0) {
-				addFolderExist = false;
+	/**
+	 * @return the highest revision changed of a repository stylesheet and its included / imported modules, null for built-in stylesheets
+	 */
+	private Long getStylesheetRevision(CmsItemId itemId, String stylesheet) {
+		
+		if (!stylesheet.startsWith("/")) {
+			return null;
+		}
+		CmsItemId styleSheetItemId = itemId.getRepository().getItemId().withRelPath(new CmsItemPath(stylesheet));
+		return stylesheetModules.getRevision(itemLookup.getItem(styleSheetItemId));
+	}
+	
+	/**
+	 * Items where the principal output is missing or from another source / stylesheet revision.
+	 * Only the principal output is checked, additional result documents are assumed to follow the principal output.
+	 * @param sourceItems items already listed, updated with the items looked up for the revision properties
+	 */
+	private Set<CmsItemId> getItemsOutdated(Set<CmsItemId> items, Map<CmsItemId, CmsItem> sourceItems, TransformConfig config, Long stylesheetRevision) {
+		
+		if (Boolean.valueOf(config.getOptions().getParams().get("PropertiesSuppress"))) {
+			throw new IllegalArgumentException("The 'incremental' parameter requires transform properties, can not be combined with 'PropertiesSuppress'.");
+		}
+		
+		Set<CmsItemId> result = new LinkedHashSet<>();
+		OutputPathIndex outputIndex = null;
+		for (CmsItemId itemId: items) {
+			final CmsItemPath outputPath = getOutputPath(itemId, config.getOptions().getParams().get("output"));
+			if (outputPath == null) {
+				// No principal output to compare with.
+				result.add(itemId);
+				continue;
+			}
+			if (outputIndex == null) {
+				outputIndex = new OutputPathIndex(itemLookup, itemId.getRepository(), true);
+			}
+			CmsItem output = outputIndex.getItem(outputPath.append(itemId.getRelPath().getName()));
+			CmsItem item = getSourceItem(itemId, sourceItems);
+			sourceItems.put(itemId, item);
+			if (output == null || !isOutputCurrent(output, item, config, stylesheetRevision)) {
+				result.add(itemId);
 			}
 		}
-
-		if (addFolderExist) {
-			patchset.add(new FolderExist(parentPath));
-
+		logger.info("Incremental transform, {} of {} items are outdated.", result.size(), items.size());
+		return result;
+	}
+	
+	/**
+	 * Checks the principal output of all items without overwrite, listing each output folder once.
+	 * The 'preflight' param: 'fail' fails before any transform, 'skip' skips items with existing output,
+	 * 'false' (default) disables the check e.g. for stylesheets that only produce additional result documents.
+	 * The source item itself is not considered existing output, e.g. default output folder.
+	 */
+	private Set<CmsItemId> getItemsPreflight(Set<CmsItemId> items, TransformConfig config) {
+		
+		final String mode = config.getOptions().getParams().getOrDefault("preflight", "false");
+		if ("false".equals(mode)) {
+			return items;
+		}
+		if (!"fail".equals(mode) && !"skip".equals(mode)) {
+			throw new IllegalArgumentException("The 'preflight' parameter must be 'fail', 'skip' or 'false': " + mode);
+		}
+		
+		Set<CmsItemId> result = new LinkedHashSet<>();
+		List<CmsItemPath> existing = new ArrayList<>();
+		OutputPathIndex outputIndex = null;
+		for (CmsItemId itemId: items) {
+			final CmsItemPath outputPath = getOutputPath(itemId, config.getOptions().getParams().get("output"));
+			if (outputPath == null) {
+				result.add(itemId);
+				continue;
+			}
+			if (outputIndex == null) {
+				outputIndex = new OutputPathIndex(itemLookup, itemId.getRepository());
+			}
+			CmsItemPath path = outputPath.append(itemId.getRelPath().getName());
+			if (!path.equals(itemId.getRelPath()) && outputIndex.exists(path)) {
+				existing.add(path);
+			} else {
+				result.add(itemId);
+			}
+		}
+		
+		if (!existing.isEmpty()) {
+			logger.info("Pre-flight found {} of {} principal outputs existing, {}: {}", existing.size(), items.size(), mode, existing);
+			if ("fail".equals(mode)) {
+				throw new IllegalStateException("Item already exists, config prohibiting overwrite of existing items: " + existing.get(0));
+			}
+		}
+		return result;
+	}
+	
+	private boolean isOutputCurrent(CmsItem output, CmsItem base, TransformConfig config, Long stylesheetRevision) {
+		
+		CmsItemProperties props = output.getProperties();
+		if (props == null) {
+			return false;
+		}
+		String stylesheetRevisionString = (stylesheetRevision != null) ? stylesheetRevision.toString() : null;
+		return base.getId().withPegRev(null).getLogicalId().equals(props.getString(TRANSFORM_BASE_PROP_KEY))
+				&& Objects.equals(config.getName(), props.getString(TRANSFORM_NAME_PROP_KEY))
+				&& Long.toString(base.getRevisionChanged().getNumber()).equals(props.getString(TRANSFORM_BASE_REVISION_PROP_KEY))
+				&& Objects.equals(stylesheetRevisionString, props.getString(TRANSFORM_STYLESHEET_REVISION_PROP_KEY));
+	}
+	
+	/**
+	 * Adds the folder, including the folders of nested href segments top-down, up to and including the output folder.
+	 * @param folders paths of folders already in the patchset, updated with the added folders
+	 * @param outputPath the validated output folder, null for repository root
+	 */
+	static void addFolderExists(CmsPatchset patchset, Set<String> folders, CmsItemPath outputPath, CmsItemPath parentPath) {
+		
+		if (parentPath == null) {
+			return;
+		}
+		if (outputPath != null && !outputPath.equals(parentPath) && !outputPath.isAncestorOf(parentPath)) {
+			throw new IllegalArgumentException("The folder must be within the output folder: " + parentPath);
+		}
+		Deque<CmsItemPath> missing = new ArrayDeque<>();
+		for (CmsItemPath path = parentPath; path != null && !folders.contains(path.getPath()); path = path.getParent()) {
+			missing.push(path);
+			if (path.equals(outputPath)) {
+				break;
+			}
+		}
+		
+		while (!missing.isEmpty()) {
+			CmsItemPath path = missing.pop();
+			folders.add(path.getPath());
+			patchset.add(new FolderExist(path));
 		}
 	}
 	
@@ -579,7 +1620,20 @@ public class TransformServiceXsl implements TransformService {
 	}
 	
 	
-	private class EmptyStreamException extends Exception {
+	private static class ItemTransformResult {
+		
+		private final CmsPatchset patchset;
+		private final Set<CmsItemLock> locked;
+		private final TransformMessages messages;
+		
+		private ItemTransformResult(CmsPatchset patchset, Set<CmsItemLock> locked, TransformMessages messages) {
+			this.patchset = patchset;
+			this.locked = locked;
+			this.messages = messages;
+		}
+	}
+	
+	static class EmptyStreamException extends Exception {
 
 		private static final long serialVersionUID = 1L;
 		
@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.Xslt30Transformer;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.info.CmsItemLookup;
+import se.simonsoft.cms.transform.lookup.CmsItemTransform;
+
+/**
+ * XSLT 3.0 streaming of the source document ('streaming' param), memory use independent of the size of the source.
+ * 
+ * Requires Saxon-EE and a stylesheet where the default mode is declared streamable, e.g. &lt;xsl:mode streamable="yes"/&gt;, 
+ * in the stylesheet or in an included / imported module.
+ * The stylesheet is compiled directly by the Processor, not by the TransformerServiceFactory, 
+ * with includes / imports resolved in the repository, see {@link CmsItemURIResolver}.
+ * Result documents are serialized while produced, see {@link SaxonOutputURIResolverSpool}.
+ */
+class TransformStreaming {
+	
+	private static final Logger logger = LoggerFactory.getLogger(TransformStreaming.class);
+	
+	private static final int PIPE_BUFFER_SIZE = 64 * 1024;
+	// One writer per concurrent transform, additional writers are queued. Idle threads are released.
+	private static final int SOURCE_THREADS_MAX = Runtime.getRuntime().availableProcessors();
+	private static final int SOURCE_THREADS_IDLE_SECONDS = 60;
+	
+	private final Processor processor;
+	private final CmsItemLookup itemLookup;
+	// Source content is written by a separate thread, CmsItem only provides push of the contents.
+	private final ThreadPoolExecutor sourceExecutor;
+	
+	TransformStreaming(Processor processor, CmsItemLookup itemLookup) {
+		this.processor = processor;
+		this.itemLookup = itemLookup;
+		
+		final AtomicInteger threads = new AtomicInteger();
+		this.sourceExecutor = new ThreadPoolExecutor(SOURCE_THREADS_MAX, SOURCE_THREADS_MAX, SOURCE_THREADS_IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread thread = new Thread(r, "transform-streaming-source-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.sourceExecutor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Stops the source writers, transforms in progress fail when reading the source.
+	 */
+	void shutdown() {
+		sourceExecutor.shutdownNow();
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if the processor can not stream
+	 */
+	void validateProcessor() {
+		
+		String edition = processor.getSaxonEdition();
+		if (!"EE".equals(edition)) {
+			throw new IllegalArgumentException("The 'streaming' param requires Saxon-EE, the processor is Saxon-" + edition + ".");
+		}
+	}
+	
+	/**
+	 * Streamability is analysed by Saxon-EE at compile time, including the modes declared in included / imported modules.
+	 * @param stylesheetItem repository stylesheet, pinned by the caller, see {@link TransformStylesheetCache}
+	 * @throws IllegalArgumentException if the stylesheet is invalid or not streamable
+	 */
+	XsltExecutable compile(CmsItem stylesheetItem) {
+		
+		final String systemId = stylesheetItem.getId().withPegRev(null).getLogicalId();
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		stylesheetItem.getContents(content);
+		
+		XsltCompiler compiler = processor.newXsltCompiler();
+		compiler.setURIResolver(new CmsItemURIResolver(itemLookup, stylesheetItem.getId().getRepository()));
+		try {
+			return compiler.compile(new StreamSource(new ByteArrayInputStream(content.toByteArray()), systemId));
+		} catch (SaxonApiException e) {
+			// Streamability analysis is performed at compile time, e.g. XTSE3430.
+			QName code = e.getErrorCode();
+			throw new IllegalArgumentException("Stylesheet is not streamable or invalid" + (code != null ? " (" + code.getLocalName() + ")" : "") + ": " + stylesheetItem.getId().getRelPath() + " - " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * @param item source item, tikahtml items are streamed from the extracted XHTML
+	 * @param outputURIResolver receives the result documents
+	 * @param spoolDirectory for the principal output
+	 * @param spoolThreshold size of the principal output kept in memory
+	 * @param messages receives xsl:message
+	 * @return the principal output
+	 */
+	InputStream transform(XsltExecutable executable, CmsItem item, SaxonOutputURIResolverSpool outputURIResolver, Path spoolDirectory, int spoolThreshold, TransformMessages messages) {
+		
+		final String systemId = item.getId().getLogicalId();
+		final Xslt30Transformer transformer = executable.load30();
+		transformer.getUnderlyingController().setOutputURIResolver(outputURIResolver);
+		transformer.setURIResolver(new CmsItemURIResolver(itemLookup, item.getId().getRepository()));
+		transformer.setMessageListener(messages);
+		
+		final TransformOutputSpool principal = new TransformOutputSpool(spoolDirectory, spoolThreshold);
+		try {
+			if (item instanceof CmsItemTransform) {
+				transformer.applyTemplates(((CmsItemTransform) item).getContentsSource(), transformer.newSerializer(principal));
+			} else {
+				transformPiped(transformer, item, systemId, principal);
+			}
+			principal.close();
+			return principal.getInputStream();
+		} catch (SaxonApiException e) {
+			principal.discard();
+			throw new RuntimeException("Streaming transform failed: " + systemId + " - " + e.getMessage(), e);
+		} catch (IOException e) {
+			principal.discard();
+			throw new RuntimeException("Streaming transform failed to spool output: " + systemId, e);
+		}
+	}
+	
+	private void transformPiped(Xslt30Transformer transformer, CmsItem item, String systemId, OutputStream principal) throws SaxonApiException, IOException {
+		
+		final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		final PipedInputStream in = new PipedInputStream(PIPE_BUFFER_SIZE);
+		final PipedOutputStream out = new PipedOutputStream(in);
+		final Future<?> writer = sourceExecutor.submit(() -> {
+			try {
+				item.getContents(out);
+			} catch (RuntimeException e) {
+				failure.set(new RuntimeException("Failed to read source: " + systemId, e));
+			} finally {
+				// Closed after recording a failure, the reader gets end of stream.
+				try {
+					out.close();
+				} catch (IOException e) {
+					logger.debug("Failed to close source pipe: {}", e.getMessage());
+				}
+			}
+		});
+		
+		try {
+			transformer.applyTemplates(new StreamSource(in, systemId), transformer.newSerializer(principal));
+		} catch (SaxonApiException e) {
+			// A failure to read the source is the cause of the parse error.
+			RuntimeException sourceFailure = failure.get();
+			if (sourceFailure != null) {
+				throw sourceFailure;
+			}
+			throw e;
+		} finally {
+			// Releases the writer if the transform terminated before the end of the source.
+			in.close();
+			awaitWriter(writer);
+		}
+		
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+	
+	private void awaitWriter(Future<?> writer) {
+		try {
+			writer.get();
+		} catch (ExecutionException e) {
+			logger.warn("Source writer failed: {}", e.getCause().getMessage(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while reading source.", e);
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pins compiled stylesheets keyed by stylesheet path, until the stylesheet revision changes or the entry is explicitly evicted.
+ * 
+ * Built-in stylesheets have no revision and stay pinned.
+ * Each stylesheet revision is compiled once, concurrent requests wait for the same compile.
+ * 
+ * @param <T> the compiled stylesheet, e.g. TransformerService
+ */
+class TransformStylesheetCache<T> {
+	
+	private static final Logger logger = LoggerFactory.getLogger(TransformStylesheetCache.class);
+	
+	private final Map<String, PinnedStylesheet<T>> stylesheets = new ConcurrentHashMap<>();
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong compiles = new AtomicLong();
+	private final AtomicLong compileNanos = new AtomicLong();
+	
+	/**
+	 * @param key stylesheet path or name
+	 * @param revision revision changed of the stylesheet, null for built-in stylesheets
+	 * @param builder compiles the stylesheet when not pinned with the same revision
+	 */
+	T get(String key, Long revision, Supplier<T> builder) {
+		
+		while (true) {
+			PinnedStylesheet<T> pinned = stylesheets.get(key);
+			if (pinned != null && Objects.equals(pinned.revision, revision)) {
+				hits.incrementAndGet();
+				return pinned.await(key);
+			}
+			
+			PinnedStylesheet<T> compiling = new PinnedStylesheet<>(revision);
+			boolean installed = (pinned == null) ? stylesheets.putIfAbsent(key, compiling) == null : stylesheets.replace(key, pinned, compiling);
+			if (!installed) {
+				// Another thread pinned or started compiling this key.
+				continue;
+			}
+			if (pinned != null) {
+				logger.info("Stylesheet {} changed (rev {} -> {}), evicted.", key, pinned.revision, revision);
+			}
+			return compile(key, compiling, builder);
+		}
+	}
+	
+	private T compile(String key, PinnedStylesheet<T> compiling, Supplier<T> builder) {
+		
+		final long start = System.nanoTime();
+		final T service;
+		try {
+			service = builder.get();
+		} catch (RuntimeException | Error e) {
+			// Not pinned, next request compiles again.
+			stylesheets.remove(key, compiling);
+			compiling.service.completeExceptionally(e);
+			throw e;
+		}
+		final long elapsed = System.nanoTime() - start;
+		compiles.incrementAndGet();
+		compileNanos.addAndGet(elapsed);
+		compiling.service.complete(service);
+		logger.info("Stylesheet {} (rev {}) ready in {} ms.", key, compiling.revision, TimeUnit.NANOSECONDS.toMillis(elapsed));
+		return service;
+	}
+	
+	boolean evict(String key) {
+		return stylesheets.remove(key) != null;
+	}
+	
+	void evictAll() {
+		stylesheets.clear();
+	}
+	
+	int size() {
+		return stylesheets.size();
+	}
+	
+	long getHits() {
+		return hits.get();
+	}
+	
+	long getCompiles() {
+		return compiles.get();
+	}
+	
+	long getCompileMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(compileNanos.get());
+	}
+	
+	
+	private static class PinnedStylesheet<T> {
+		
+		private final Long revision;
+		private final CompletableFuture<T> service = new CompletableFuture<>();
+		
+		private PinnedStylesheet(Long revision) {
+			this.revision = revision;
+		}
+		
+		private T await(String key) {
+			try {
+				return service.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new RuntimeException("Failed to compile stylesheet: " + key, e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for stylesheet: " + key, e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.TransformerException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.info.CmsItemLookup;
+import se.simonsoft.cms.item.info.CmsItemNotFoundException;
+
+/**
+ * Revision of a repository stylesheet including the modules of xsl:include and xsl:import, 
+ * i.e. the highest revision changed within the module closure.
+ * 
+ * The modules are found by parsing the stylesheets, parsed again only when one of the modules has changed. 
+ * Checking that a known closure is current requires one lookup per included / imported module.
+ * Modules outside of the repository, e.g. built-in stylesheets, are not versioned and not considered.
+ */
+class TransformStylesheetModules {
+	
+	private static final Logger logger = LoggerFactory.getLogger(TransformStylesheetModules.class);
+	
+	private static final String XSL_NAMESPACE = "http://www.w3.org/1999/XSL/Transform";
+	
+	private final CmsItemLookup itemLookup;
+	private final Map<String, ModuleClosure> closures = new ConcurrentHashMap<>();
+	
+	TransformStylesheetModules(CmsItemLookup itemLookup) {
+		this.itemLookup = itemLookup;
+	}
+	
+	/**
+	 * @param stylesheetItem repository stylesheet at head
+	 * @return the highest revision changed of the stylesheet and its modules
+	 */
+	long getRevision(CmsItem stylesheetItem) {
+		
+		final String key = stylesheetItem.getId().withPegRev(null).getLogicalId();
+		ModuleClosure closure = closures.get(key);
+		if (closure != null && isCurrent(closure, stylesheetItem)) {
+			return closure.revision;
+		}
+		
+		closure = getClosure(stylesheetItem);
+		closures.put(key, closure);
+		logger.debug("Stylesheet {} with {} modules, revision {}: {}", key, closure.modules.size(), closure.revision, closure.modules.keySet());
+		return closure.revision;
+	}
+	
+	private boolean isCurrent(ModuleClosure closure, CmsItem stylesheetItem) {
+		
+		if (stylesheetItem.getRevisionChanged().getNumber() != closure.stylesheetRevision) {
+			return false;
+		}
+		for (Map.Entry<CmsItemId, Long> module: closure.modules.entrySet()) {
+			try {
+				if (itemLookup.getItem(module.getKey()).getRevisionChanged().getNumber() != module.getValue()) {
+					return false;
+				}
+			} catch (CmsItemNotFoundException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private ModuleClosure getClosure(CmsItem stylesheetItem) {
+		
+		final long stylesheetRevision = stylesheetItem.getRevisionChanged().getNumber();
+		final Map<CmsItemId, Long> modules = new LinkedHashMap<>();
+		final Set<String> visited = new HashSet<>();
+		final Deque<CmsItem> parse = new ArrayDeque<>();
+		visited.add(stylesheetItem.getId().withPegRev(null).getLogicalId());
+		parse.add(stylesheetItem);
+		
+		while (!parse.isEmpty()) {
+			CmsItem item = parse.poll();
+			for (CmsItemId moduleId: getModuleIds(item)) {
+				if (!visited.add(moduleId.getLogicalId())) {
+					continue;
+				}
+				CmsItem module;
+				try {
+					module = itemLookup.getItem(moduleId);
+				} catch (CmsItemNotFoundException e) {
+					// Reported when the stylesheet is compiled.
+					logger.debug("Stylesheet module does not exist: {}", moduleId);
+					continue;
+				}
+				modules.put(moduleId, module.getRevisionChanged().getNumber());
+				parse.add(module);
+			}
+		}
+		return new ModuleClosure(stylesheetRevision, modules);
+	}
+	
+	/**
+	 * @return repository items of xsl:include and xsl:import in the stylesheet
+	 */
+	List<CmsItemId> getModuleIds(CmsItem stylesheetItem) {
+		
+		final CmsItemId stylesheetId = stylesheetItem.getId().withPegRev(null);
+		final String base = stylesheetId.getLogicalId();
+		final List<String> hrefs = new ArrayList<>();
+		
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		stylesheetItem.getContents(content);
+		try {
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			SAXParser parser = factory.newSAXParser();
+			parser.parse(new ByteArrayInputStream(content.toByteArray()), new DefaultHandler() {
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes attributes) {
+					if (XSL_NAMESPACE.equals(uri) && ("include".equals(localName) || "import".equals(localName))) {
+						String href = attributes.getValue("href");
+						if (href != null) {
+							hrefs.add(href);
+						}
+					}
+				}
+			}, base);
+		} catch (ParserConfigurationException | SAXException | IOException e) {
+			throw new IllegalArgumentException("Failed to parse stylesheet: " + stylesheetId.getRelPath() + " - " + e.getMessage(), e);
+		}
+		
+		List<CmsItemId> result = new ArrayList<>();
+		for (String href: hrefs) {
+			try {
+				CmsItemId moduleId = CmsItemURIResolver.getItemId(stylesheetId.getRepository(), href, base);
+				if (moduleId != null) {
+					result.add(moduleId);
+				}
+			} catch (TransformerException e) {
+				throw new IllegalArgumentException("Invalid stylesheet module in " + stylesheetId.getRelPath() + ": " + e.getMessage(), e);
+			}
+		}
+		return result;
+	}
+	
+	
+	private static class ModuleClosure {
+		
+		private final long stylesheetRevision;
+		private final Map<CmsItemId, Long> modules;
+		private final long revision;
+		
+		private ModuleClosure(long stylesheetRevision, Map<CmsItemId, Long> modules) {
+			this.stylesheetRevision = stylesheetRevision;
+			this.modules = modules;
+			this.revision = modules.values().stream().mapToLong(Long::longValue).reduce(stylesheetRevision, Math::max);
+		}
+	}
+
+}
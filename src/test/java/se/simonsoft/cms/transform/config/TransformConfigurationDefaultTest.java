@@ -18,7 +18,11 @@ package se.simonsoft.cms.transform.config;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,12 +34,16 @@ import org.mockito.MockitoAnnotations;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 
+import se.simonsoft.cms.item.CmsItem;
 import se.simonsoft.cms.item.CmsItemId;
 import se.simonsoft.cms.item.CmsItemKind;
+import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.RepoRevision;
 import se.simonsoft.cms.item.config.CmsConfigOption;
 import se.simonsoft.cms.item.config.CmsResourceContext;
 import se.simonsoft.cms.item.impl.CmsConfigOptionBase;
 import se.simonsoft.cms.item.impl.CmsItemIdArg;
+import se.simonsoft.cms.item.info.CmsItemLookup;
 import se.simonsoft.cms.item.info.CmsRepositoryLookup;
 import se.simonsoft.cms.transform.config.databind.TransformConfig;
 
@@ -80,6 +88,83 @@ public class TransformConfigurationDefaultTest {
 		
 	}
 	
+	@Test
+	public void testConfigurationFolder() throws Exception {
+		
+		HashMap<String, CmsConfigOption> configs = new HashMap<String, CmsConfigOption>();
+		configs.put(TRANSFORM_IMPORT_CONFIG, new CmsConfigOptionBase<>(TRANSFORM_IMPORT_CONFIG, getActiveTransformConfig()));
+		
+		CmsItemId folderId = itemId.getRepository().getItemId(itemId.getRelPath().getParent(), null);
+		when(repoLookup.getConfig(folderId, CmsItemKind.Folder)).thenReturn(new CmsResourceContext(folderId, configs));
+		
+		TransformConfigurationDefault configurationDefault = new TransformConfigurationDefault(repoLookup, reader);
+		Map<String, TransformConfig> configuration = configurationDefault.getConfigurationFolder(folderId);
+		assertEquals("Config of the folder itself", 1, configuration.size());
+		assertTrue(configuration.get("import").isActive());
+		
+		assertEquals("Same config as for items in the folder", 1, configurationDefault.getConfiguration(itemId).size());
+	}
+	
+	@Test
+	public void testConfigurationCachedPerRevision() throws Exception {
+		
+		HashMap<String, CmsConfigOption> configs = new HashMap<String, CmsConfigOption>();
+		configs.put(TRANSFORM_IMPORT_CONFIG, new CmsConfigOptionBase<>(TRANSFORM_IMPORT_CONFIG, getActiveTransformConfig()));
+		when(repoLookup.getConfig(any(CmsItemId.class), any(CmsItemKind.class))).thenReturn(new CmsResourceContext(itemId, configs));
+		
+		TransformConfigurationDefault configurationDefault = new TransformConfigurationDefault(repoLookup, reader);
+		CmsItemId itemRev = itemId.withPegRev(10L);
+		CmsItemId siblingRev = new CmsItemIdArg("x-svn:///svn/demo1^/test/path/other.xml").withPegRev(10L);
+		
+		Map<String, TransformConfig> first = configurationDefault.getConfiguration(itemRev);
+		first.get("import").setName("modified");
+		first.get("import").getOptions().getParams().put("output", "/modified");
+		
+		Map<String, TransformConfig> second = configurationDefault.getConfiguration(siblingRev);
+		verify(repoLookup, times(1)).getConfig(any(CmsItemId.class), any(CmsItemKind.class));
+		assertNotSame("Callers get copies", first.get("import"), second.get("import"));
+		assertNull(second.get("import").getName());
+		assertEquals("/dita/import", second.get("import").getOptions().getParams().get("output"));
+		
+		configurationDefault.getConfiguration(itemId.withPegRev(11L));
+		verify(repoLookup, times(2)).getConfig(any(CmsItemId.class), any(CmsItemKind.class));
+	}
+	
+	@Test
+	public void testConfigurationCachedPerFolderRevision() throws Exception {
+		
+		HashMap<String, CmsConfigOption> configs = new HashMap<String, CmsConfigOption>();
+		configs.put(TRANSFORM_IMPORT_CONFIG, new CmsConfigOptionBase<>(TRANSFORM_IMPORT_CONFIG, getActiveTransformConfig()));
+		when(repoLookup.getConfig(any(CmsItemId.class), any(CmsItemKind.class))).thenReturn(new CmsResourceContext(itemId, configs));
+		
+		CmsItemLookup itemLookup = mock(CmsItemLookup.class);
+		CmsItem test = mockFolder(itemLookup, "/test", 8);
+		mockFolder(itemLookup, "/test/path", 8);
+		
+		TransformConfigurationDefault configurationDefault = new TransformConfigurationDefault(repoLookup, Collections.singletonMap(itemId.getRepository(), itemLookup), reader);
+		assertEquals(1, configurationDefault.getConfiguration(itemId.withPegRev(10L)).size());
+		assertEquals(1, configurationDefault.getConfiguration(itemId.withPegRev(11L)).size());
+		verify(repoLookup, times(1)).getConfig(any(CmsItemId.class), any(CmsItemKind.class));
+		
+		// Config is inherited from parent folders.
+		when(test.getRevisionChanged()).thenReturn(new RepoRevision(12, null));
+		assertEquals(1, configurationDefault.getConfiguration(itemId.withPegRev(12L)).size());
+		verify(repoLookup, times(2)).getConfig(any(CmsItemId.class), any(CmsItemKind.class));
+	}
+	
+	@Test
+	public void testConfigurationCachedEmpty() throws Exception {
+		
+		HashMap<String, CmsConfigOption> configs = new HashMap<String, CmsConfigOption>();
+		configs.put(PUBLISH_CONFIG, new CmsConfigOptionBase<>(PUBLISH_CONFIG, getInactiveTransformConfig()));
+		when(repoLookup.getConfig(any(CmsItemId.class), any(CmsItemKind.class))).thenReturn(new CmsResourceContext(itemId, configs));
+		
+		TransformConfigurationDefault configurationDefault = new TransformConfigurationDefault(repoLookup, reader);
+		assertTrue(configurationDefault.getConfiguration(itemId.withPegRev(10L)).isEmpty());
+		assertTrue(configurationDefault.getConfiguration(itemId.withPegRev(10L)).isEmpty());
+		verify(repoLookup, times(1)).getConfig(any(CmsItemId.class), any(CmsItemKind.class));
+	}
+	
 	@Test
 	public void testNullItemId() {
 		
@@ -93,6 +178,13 @@ public class TransformConfigurationDefaultTest {
 		
 	}
 	
+	private CmsItem mockFolder(CmsItemLookup itemLookup, String path, long revision) {
+		CmsItem folder = mock(CmsItem.class);
+		when(folder.getRevisionChanged()).thenReturn(new RepoRevision(revision, null));
+		when(itemLookup.getItem(itemId.getRepository().getItemId(new CmsItemPath(path), null))).thenReturn(folder);
+		return folder;
+	}
+	
 	private String getActiveTransformConfig() {
 		return "{\n" + 
 				"    \"active\": true,\n" + 
@@ -21,6 +21,7 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -39,6 +40,8 @@ import se.repos.testing.indexing.ReposTestIndexing;
 import se.simonsoft.cms.backend.filexml.FilexmlSourceClasspath;
 import se.simonsoft.cms.item.CmsItem;
 import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.CmsItemKind;
+import se.simonsoft.cms.item.CmsItemPath;
 import se.simonsoft.cms.item.CmsRepository;
 import se.simonsoft.cms.item.impl.CmsItemIdArg;
 import se.simonsoft.cms.item.info.CmsItemLookup;
@@ -49,6 +52,7 @@ import se.simonsoft.cms.item.workflow.WorkflowItemInput;
 import se.simonsoft.cms.transform.config.TransformConfiguration;
 import se.simonsoft.cms.transform.config.TransformConfigurationDefault;
 import se.simonsoft.cms.transform.config.databind.TransformConfig;
+import se.simonsoft.cms.transform.config.databind.TransformConfigOptions;
 import se.simonsoft.cms.transform.testconfig.TestFileXmlSetUp;
 
 public class TransformItemChangedEventListenerTest {
@@ -175,6 +179,179 @@ public class TransformItemChangedEventListenerTest {
 	}
 	
 	
+	@Test
+	public void testDebounceCoalesced() throws WorkflowExecutionException {
+		
+		TransformConfiguration mockTransformConfig = Mockito.mock(TransformConfiguration.class);
+		WorkflowExecutor<WorkflowItemInput> spyWfExec = spy(WorkflowExecutor.class);
+		
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc).withPegRev(1L);
+		CmsItem item = lookup.getItem(itemId);
+		
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		TransformConfigOptions options = new TransformConfigOptions();
+		options.setType("xsl");
+		options.getParams().put("debounce", "1");
+		config.setOptions(options);
+		Map<String, TransformConfig> configs = new HashMap<>();
+		configs.put("debounced", config);
+		Mockito.when(mockTransformConfig.getConfiguration(itemId)).thenAnswer(i -> copyConfigs(configs));
+		
+		TransformItemChangedEventListener eventListener = new TransformItemChangedEventListener(mockTransformConfig, lookups, "transformuser", spyWfExec);
+		eventListener.onItemChange(item);
+		eventListener.onItemChange(item);
+		eventListener.onItemChange(item);
+		verify(spyWfExec, times(0)).startExecution(Mockito.any(WorkflowItemInput.class));
+		
+		ArgumentCaptor<WorkflowItemInput> argCaptor = ArgumentCaptor.forClass(WorkflowItemInput.class);
+		verify(spyWfExec, Mockito.timeout(5000).times(1)).startExecution(argCaptor.capture());
+		assertEquals("debounced", ((TransformItemWorkflowInput) argCaptor.getValue()).getOptions().getName());
+		assertEquals("transformuser", ((TransformItemWorkflowInput) argCaptor.getValue()).getUserId());
+	}
+	
+	@Test
+	public void testDebounceRequiresUserId() throws WorkflowExecutionException {
+		
+		TransformConfiguration mockTransformConfig = Mockito.mock(TransformConfiguration.class);
+		WorkflowExecutor<WorkflowItemInput> spyWfExec = spy(WorkflowExecutor.class);
+		
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc).withPegRev(1L);
+		CmsItem item = lookup.getItem(itemId);
+		
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		TransformConfigOptions options = new TransformConfigOptions();
+		options.getParams().put("debounce", "60");
+		config.setOptions(options);
+		Map<String, TransformConfig> configs = new HashMap<>();
+		configs.put("debounced", config);
+		Mockito.when(mockTransformConfig.getConfiguration(itemId)).thenAnswer(i -> copyConfigs(configs));
+		
+		TransformItemChangedEventListener eventListener = new TransformItemChangedEventListener(mockTransformConfig, lookups, userId, spyWfExec);
+		eventListener.onItemChange(item);
+		eventListener.onItemChange(item);
+		verify(spyWfExec, times(2)).startExecution(Mockito.any(WorkflowItemInput.class));
+	}
+	
+	@Test
+	public void testDebounceShutdown() throws WorkflowExecutionException {
+		
+		TransformConfiguration mockTransformConfig = Mockito.mock(TransformConfiguration.class);
+		WorkflowExecutor<WorkflowItemInput> spyWfExec = spy(WorkflowExecutor.class);
+		
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc).withPegRev(1L);
+		CmsItem item = lookup.getItem(itemId);
+		
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		TransformConfigOptions options = new TransformConfigOptions();
+		options.setType("xsl");
+		options.getParams().put("debounce", "60");
+		config.setOptions(options);
+		Map<String, TransformConfig> configs = new HashMap<>();
+		configs.put("debounced", config);
+		Mockito.when(mockTransformConfig.getConfiguration(itemId)).thenAnswer(i -> copyConfigs(configs));
+		
+		TransformItemChangedEventListener eventListener = new TransformItemChangedEventListener(mockTransformConfig, lookups, "transformuser", spyWfExec);
+		eventListener.onItemChange(item);
+		verify(spyWfExec, times(0)).startExecution(Mockito.any(WorkflowItemInput.class));
+		
+		// Pending execution is started at shutdown, not lost.
+		ArgumentCaptor<WorkflowItemInput> argCaptor = ArgumentCaptor.forClass(WorkflowItemInput.class);
+		eventListener.shutdown();
+		verify(spyWfExec, times(1)).startExecution(argCaptor.capture());
+		assertEquals(itemId, ((TransformItemWorkflowInput) argCaptor.getValue()).getItemId());
+		
+		// Started immediately after shutdown.
+		eventListener.onItemChange(item);
+		verify(spyWfExec, times(2)).startExecution(Mockito.any(WorkflowItemInput.class));
+	}
+	
+	@Test
+	public void testBatchFolder() throws WorkflowExecutionException {
+		
+		TransformConfiguration mockTransformConfig = Mockito.mock(TransformConfiguration.class);
+		WorkflowExecutor<WorkflowItemInput> spyWfExec = spy(WorkflowExecutor.class);
+		
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc).withPegRev(1L);
+		CmsItem item = lookup.getItem(itemId);
+		CmsItem other = Mockito.mock(CmsItem.class);
+		CmsItemId otherId = repo.getItemId(new CmsItemPath("/doc/other.xml"), 1L);
+		Mockito.when(other.getId()).thenReturn(otherId);
+		Mockito.when(other.getKind()).thenReturn(CmsItemKind.File);
+		Mockito.when(other.getProperties()).thenReturn(item.getProperties());
+		
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		TransformConfigOptions options = new TransformConfigOptions();
+		options.setType("xsl");
+		options.getParams().put("batch", "1");
+		config.setOptions(options);
+		Map<String, TransformConfig> configs = new HashMap<>();
+		configs.put("batched", config);
+		Mockito.when(mockTransformConfig.getConfiguration(Mockito.any(CmsItemId.class))).thenAnswer(i -> copyConfigs(configs));
+		
+		TransformItemChangedEventListener eventListener = new TransformItemChangedEventListener(mockTransformConfig, lookups, "transformuser", spyWfExec);
+		eventListener.onItemChange(item);
+		eventListener.onItemChange(other);
+		verify(spyWfExec, times(0)).startExecution(Mockito.any(WorkflowItemInput.class));
+		
+		ArgumentCaptor<WorkflowItemInput> argCaptor = ArgumentCaptor.forClass(WorkflowItemInput.class);
+		verify(spyWfExec, Mockito.timeout(5000).times(1)).startExecution(argCaptor.capture());
+		TransformItemsWorkflowInput input = (TransformItemsWorkflowInput) argCaptor.getValue();
+		assertEquals("transform-items", input.getAction());
+		assertEquals("/doc", input.getItemId().getRelPath().getPath());
+		assertEquals(Long.valueOf(1L), input.getItemId().getPegRev());
+		assertEquals("batched", input.getOptions().getName());
+		assertEquals(Arrays.asList("transform-test.xml", "other.xml"), input.getOptions().getItems());
+		assertEquals("transformuser", input.getUserId());
+	}
+	
+	@Test
+	public void testBatchShutdown() throws WorkflowExecutionException {
+		
+		TransformConfiguration mockTransformConfig = Mockito.mock(TransformConfiguration.class);
+		WorkflowExecutor<WorkflowItemInput> spyWfExec = spy(WorkflowExecutor.class);
+		
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc).withPegRev(1L);
+		CmsItem item = lookup.getItem(itemId);
+		CmsItem other = Mockito.mock(CmsItem.class);
+		CmsItemId otherId = repo.getItemId(new CmsItemPath("/doc/other.xml"), 1L);
+		Mockito.when(other.getId()).thenReturn(otherId);
+		Mockito.when(other.getKind()).thenReturn(CmsItemKind.File);
+		Mockito.when(other.getProperties()).thenReturn(item.getProperties());
+		
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		TransformConfigOptions options = new TransformConfigOptions();
+		options.setType("xsl");
+		options.getParams().put("batch", "60");
+		config.setOptions(options);
+		Map<String, TransformConfig> configs = new HashMap<>();
+		configs.put("batched", config);
+		Mockito.when(mockTransformConfig.getConfiguration(Mockito.any(CmsItemId.class))).thenAnswer(i -> copyConfigs(configs));
+		
+		TransformItemChangedEventListener eventListener = new TransformItemChangedEventListener(mockTransformConfig, lookups, "transformuser", spyWfExec);
+		eventListener.onItemChange(item);
+		eventListener.onItemChange(other);
+		verify(spyWfExec, times(0)).startExecution(Mockito.any(WorkflowItemInput.class));
+		
+		ArgumentCaptor<WorkflowItemInput> argCaptor = ArgumentCaptor.forClass(WorkflowItemInput.class);
+		eventListener.shutdown();
+		verify(spyWfExec, times(1)).startExecution(argCaptor.capture());
+		TransformItemsWorkflowInput input = (TransformItemsWorkflowInput) argCaptor.getValue();
+		assertEquals(Arrays.asList("transform-test.xml", "other.xml"), input.getOptions().getItems());
+		assertEquals("transformuser", input.getUserId());
+	}
+	
+	private static Map<String, TransformConfig> copyConfigs(Map<String, TransformConfig> configs) {
+		Map<String, TransformConfig> result = new HashMap<>();
+		configs.forEach((name, config) -> result.put(name, new TransformConfig(config)));
+		return result;
+	}
+	
+	
 	public class ConfigComparator implements Comparator<TransformConfig> {
 
 		@Override
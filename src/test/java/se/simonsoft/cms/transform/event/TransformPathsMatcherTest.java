@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import se.simonsoft.cms.item.CmsItemPath;
+
+public class TransformPathsMatcherTest {
+
+	@Test
+	public void testMatchesAncestor() {
+		
+		TransformPathsMatcher matcher = new TransformPathsMatcher("/doc\n /other/sub \r\n/doc/deeper");
+		assertTrue(matcher.matches(new CmsItemPath("/doc/transform-test.xml")));
+		assertTrue(matcher.matches(new CmsItemPath("/doc/a/b/c.xml")));
+		assertTrue(matcher.matches(new CmsItemPath("/other/sub/c.xml")));
+		
+		assertFalse("Not a strict ancestor", matcher.matches(new CmsItemPath("/doc")));
+		assertFalse(matcher.matches(new CmsItemPath("/other/c.xml")));
+		assertFalse(matcher.matches(new CmsItemPath("/other/sub")));
+		assertFalse("Segments must match completely", matcher.matches(new CmsItemPath("/docs/a.xml")));
+		assertFalse(matcher.matches(new CmsItemPath("/do/a.xml")));
+		assertFalse(matcher.matches(new CmsItemPath("/a.xml")));
+	}
+	
+	@Test
+	public void testPaths() {
+		
+		TransformPathsMatcher matcher = new TransformPathsMatcher("/doc/deeper\n /other/sub \r\n/doc");
+		assertEquals("Nested paths are covered by the ancestor", Arrays.asList(new CmsItemPath("/doc"), new CmsItemPath("/other/sub")), matcher.getPaths());
+	}
+	
+	@Test
+	public void testEmpty() {
+		
+		assertFalse(new TransformPathsMatcher(null).matches(new CmsItemPath("/doc/a.xml")));
+		assertFalse(new TransformPathsMatcher(" \n").matches(new CmsItemPath("/doc/a.xml")));
+		assertTrue(new TransformPathsMatcher(null).getPaths().isEmpty());
+	}
+
+}
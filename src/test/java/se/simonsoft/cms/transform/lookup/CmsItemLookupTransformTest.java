@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.lookup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.RepoRevision;
+import se.simonsoft.cms.item.impl.CmsItemIdArg;
+import se.simonsoft.cms.item.info.CmsItemLookup;
+import se.simonsoft.cms.item.properties.CmsItemProperties;
+import se.simonsoft.cms.reporting.CmsItemLookupReporting;
+import se.simonsoft.cms.reporting.response.CmsItemReporting;
+
+public class CmsItemLookupTransformTest {
+	
+	private final CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/demo1^/test/some.pdf");
+	
+	private CmsItemLookup itemLookup;
+	private CmsItemLookupReporting itemLookupReporting;
+	private CmsItem item;
+
+	@Before
+	public void setUp() {
+		itemLookup = mock(CmsItemLookup.class);
+		itemLookupReporting = mock(CmsItemLookupReporting.class);
+		
+		CmsItemProperties properties = mock(CmsItemProperties.class);
+		when(properties.getString("cms:class")).thenReturn("something tikahtml");
+		item = mock(CmsItem.class);
+		when(item.getProperties()).thenReturn(properties);
+		when(item.getRevisionChanged()).thenReturn(new RepoRevision(5, null));
+		when(itemLookup.getItem(itemId)).thenReturn(item);
+		when(itemLookup.getItem(itemId.withPegRev(5L))).thenReturn(item);
+		
+		CmsItemReporting reporting = mock(CmsItemReporting.class);
+		when(reporting.getMeta()).thenReturn(Collections.<String, Object>singletonMap(CmsItemTransform.FIELD, "<html>extracted</html>"));
+		when(itemLookupReporting.getItem(itemId)).thenReturn(reporting);
+		when(itemLookupReporting.getItem(itemId.withPegRev(5L))).thenReturn(reporting);
+	}
+	
+	@Test
+	public void testCacheHitRevision() {
+		
+		CmsItemLookupTransform lookup = new CmsItemLookupTransform(itemLookup, itemLookupReporting);
+		CmsItem first = lookup.getItem(itemId.withPegRev(5L));
+		assertTrue(first instanceof CmsItemTransform);
+		assertSame("no lookup at all when cached", first, lookup.getItem(itemId.withPegRev(5L)));
+		assertEquals(1, lookup.getCacheHits());
+		assertEquals(1, lookup.getCacheMisses());
+		verify(itemLookup, times(1)).getItem(itemId.withPegRev(5L));
+		verify(itemLookupReporting, times(1)).getItem(itemId.withPegRev(5L));
+	}
+	
+	@Test
+	public void testCacheHitHead() {
+		
+		CmsItemLookupTransform lookup = new CmsItemLookupTransform(itemLookup, itemLookupReporting);
+		CmsItem first = lookup.getItem(itemId);
+		assertSame(first, lookup.getItem(itemId));
+		assertEquals(1, lookup.getCacheHits());
+		assertEquals(1, lookup.getCacheMisses());
+		// The revision changed is looked up each time, the extracted content only once.
+		verify(itemLookup, times(2)).getItem(itemId);
+		verify(itemLookupReporting, times(1)).getItem(itemId);
+		
+		// Same entry when requested with the revision changed.
+		assertSame(first, lookup.getItem(itemId.withPegRev(5L)));
+		assertEquals(2, lookup.getCacheHits());
+	}
+	
+	@Test
+	public void testCacheHitPinned() {
+		
+		when(itemLookup.getItem(itemId.withPegRev(7L))).thenReturn(item);
+		CmsItemReporting reporting = mock(CmsItemReporting.class);
+		when(reporting.getMeta()).thenReturn(Collections.<String, Object>singletonMap(CmsItemTransform.FIELD, "<html>extracted</html>"));
+		when(itemLookupReporting.getItem(itemId.withPegRev(7L))).thenReturn(reporting);
+		
+		CmsItemLookupTransform lookup = new CmsItemLookupTransform(itemLookup, itemLookupReporting);
+		lookup.setRevision(7L);
+		CmsItem first = lookup.getItem(itemId);
+		assertSame("no lookup at all when pinned and cached", first, lookup.getItem(itemId));
+		assertEquals(1, lookup.getCacheHits());
+		assertEquals(1, lookup.getCacheMisses());
+		verify(itemLookup, times(1)).getItem(itemId.withPegRev(7L));
+		verify(itemLookupReporting, times(1)).getItem(itemId.withPegRev(7L));
+		verify(itemLookup, times(0)).getItem(itemId);
+		
+		// Same entry when requested with the revision changed.
+		assertSame(first, lookup.getItem(itemId.withPegRev(5L)));
+		assertEquals(2, lookup.getCacheHits());
+		
+		lookup.setRevision(null);
+		assertSame(first, lookup.getItem(itemId));
+		verify(itemLookup, times(1)).getItem(itemId);
+	}
+	
+	@Test
+	public void testCacheDisabled() {
+		
+		CmsItemLookupTransform lookup = new CmsItemLookupTransform(itemLookup, itemLookupReporting, 0);
+		lookup.getItem(itemId);
+		lookup.getItem(itemId);
+		assertEquals(0, lookup.getCacheHits());
+		assertEquals(2, lookup.getCacheMisses());
+		verify(itemLookupReporting, times(2)).getItem(itemId);
+	}
+	
+	@Test
+	public void testNotTikahtml() {
+		
+		CmsItemId otherId = new CmsItemIdArg("x-svn:///svn/demo1^/test/other.xml");
+		CmsItem other = mock(CmsItem.class);
+		when(itemLookup.getItem(otherId)).thenReturn(other);
+		
+		CmsItemLookupTransform lookup = new CmsItemLookupTransform(itemLookup, itemLookupReporting);
+		assertSame(other, lookup.getItem(otherId));
+		assertEquals(0, lookup.getCacheHits());
+		assertEquals(0, lookup.getCacheMisses());
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.lookup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+public class CmsItemTransformCacheTest {
+
+	@Test
+	public void testEvictLeastRecentlyUsed() {
+		
+		CmsItemTransformCache cache = new CmsItemTransformCache(300);
+		CmsItemTransform a = getItem(100);
+		cache.put("a", a);
+		cache.put("b", getItem(100));
+		cache.put("c", getItem(100));
+		assertEquals(3, cache.size());
+		assertEquals(300, cache.getWeight());
+		
+		// Access makes "b" the eldest entry.
+		assertSame(a, cache.get("a"));
+		cache.put("d", getItem(100));
+		assertEquals(3, cache.size());
+		assertEquals(300, cache.getWeight());
+		assertNull("least recently used", cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertNotNull(cache.get("d"));
+		
+		// Evicts as many as required for the weight.
+		cache.put("e", getItem(250));
+		assertEquals(1, cache.size());
+		assertEquals(250, cache.getWeight());
+		assertNotNull(cache.get("e"));
+	}
+	
+	@Test
+	public void testReplace() {
+		
+		CmsItemTransformCache cache = new CmsItemTransformCache(300);
+		cache.put("a", getItem(100));
+		cache.put("a", getItem(200));
+		assertEquals(1, cache.size());
+		assertEquals(200, cache.getWeight());
+	}
+	
+	@Test
+	public void testLargerThanMax() {
+		
+		CmsItemTransformCache cache = new CmsItemTransformCache(300);
+		cache.put("a", getItem(100));
+		cache.put("b", getItem(301));
+		assertNull(cache.get("b"));
+		assertNotNull("not evicted by an item that is not cached", cache.get("a"));
+		assertEquals(100, cache.getWeight());
+		
+		CmsItemTransformCache disabled = new CmsItemTransformCache(0);
+		disabled.put("a", getItem(1));
+		assertEquals(0, disabled.size());
+	}
+	
+	private CmsItemTransform getItem(long filesize) {
+		CmsItemTransform item = mock(CmsItemTransform.class);
+		when(item.getFilesize()).thenReturn(filesize);
+		return item;
+	}
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.lookup;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class CmsItemTransformTest {
+
+	@Test
+	public void testGetLengthUtf8() {
+		assertLengthUtf8("");
+		assertLengthUtf8("<html>ascii</html>");
+		assertLengthUtf8("<p>Åäö é</p>");
+		assertLengthUtf8("<p>€ 中文</p>");
+		assertLengthUtf8("<p>😀 surrogate pair</p>");
+		assertLengthUtf8("<p>\ud83d unpaired \ude00</p>");
+	}
+	
+	private void assertLengthUtf8(String contents) {
+		assertEquals(contents, contents.getBytes(StandardCharsets.UTF_8).length, CmsItemTransform.getLengthUtf8(contents));
+	}
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import javax.xml.transform.TransformerException;
+
+import org.junit.Test;
+
+import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.impl.CmsItemIdArg;
+
+public class CmsItemURIResolverTest {
+	
+	private static final String BASE = "x-svn:///svn/repo1^/stylesheet/main.xsl";
+	private final CmsRepository repository = new CmsItemIdArg(BASE).getRepository();
+
+	@Test
+	public void testRelative() throws Exception {
+		assertEquals("/stylesheet/include.xsl", CmsItemURIResolver.getItemId(repository, "include.xsl", BASE).getRelPath().getPath());
+		assertEquals("/stylesheet/common/include.xsl", CmsItemURIResolver.getItemId(repository, "./common/include.xsl", BASE).getRelPath().getPath());
+		assertEquals("/common/include.xsl", CmsItemURIResolver.getItemId(repository, "../common/include.xsl", BASE).getRelPath().getPath());
+		assertEquals("/common/include.xsl", CmsItemURIResolver.getItemId(repository, "/common/include.xsl", BASE).getRelPath().getPath());
+		assertEquals("/stylesheet/with space.xsl", CmsItemURIResolver.getItemId(repository, "with%20space.xsl", BASE).getRelPath().getPath());
+	}
+	
+	@Test
+	public void testAbsolute() throws Exception {
+		assertEquals("/other/include.xsl", CmsItemURIResolver.getItemId(repository, "x-svn:///svn/repo1^/other/include.xsl", BASE).getRelPath().getPath());
+		assertNull("other scheme", CmsItemURIResolver.getItemId(repository, "http://www.example.com/include.xsl", BASE));
+		assertNull("base not in repository", CmsItemURIResolver.getItemId(repository, "include.xsl", "file:/tmp/main.xsl"));
+		try {
+			CmsItemURIResolver.getItemId(repository, "x-svn:///svn/repo2^/other/include.xsl", BASE);
+			fail("Other repository");
+		} catch (TransformerException e) {
+			// expected
+		}
+	}
+	
+	@Test(expected = TransformerException.class)
+	public void testOutsideRepository() throws Exception {
+		CmsItemURIResolver.getItemId(repository, "../../include.xsl", BASE);
+	}
+
+}
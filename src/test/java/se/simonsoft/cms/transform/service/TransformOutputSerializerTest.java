@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.Xslt30Transformer;
+import net.sf.saxon.s9api.XsltExecutable;
+
+public class TransformOutputSerializerTest {
+	
+	private static final String OUTPUT_TRANSFORM = "se/simonsoft/cms/transform/output.xsl";
+	private static final String GOLDEN = "se/simonsoft/cms/transform/service/output/";
+	
+	private static Processor processor;
+	private static XsltExecutable outputXsl;
+	
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		processor = new Processor(false);
+		outputXsl = processor.newXsltCompiler().compile(new StreamSource(getResource(OUTPUT_TRANSFORM)));
+	}
+	
+	@Test
+	public void testDoctype() throws Exception {
+		String expected = serializeXsl("doctype.xml");
+		String actual = serializeNative("doctype.xml");
+		
+		assertEquals(expected, actual);
+		assertTrue(actual.contains("<!DOCTYPE section"));
+		assertTrue(actual.contains("\"-//Simonsoft//DTD Section//EN\""));
+		assertTrue(actual.contains("\"section.dtd\""));
+		assertFalse("Should clean up temporary doctype attrs", actual.contains("cms:doctype-public"));
+		assertFalse("Should clean up temporary doctype attrs", actual.contains("cms:doctype-system"));
+		assertTrue("Comments and PIs preserved", actual.contains("<!-- Comment within the section. -->"));
+		assertTrue("Comments and PIs preserved", actual.contains("<?Pub Caret -2?>"));
+		assertTrue("Normalized to NFC", actual.contains("café"));
+	}
+	
+	@Test
+	public void testDoctypeSystemOnly() throws Exception {
+		String expected = serializeXsl("doctype-system-only.xml");
+		String actual = serializeNative("doctype-system-only.xml");
+		
+		assertEquals(expected, actual);
+		assertFalse("DOCTYPE requires a public id", actual.contains("<!DOCTYPE"));
+		assertFalse("Should clean up temporary doctype attrs", actual.contains("cms:doctype-"));
+	}
+	
+	@Test
+	public void testNoDoctype() throws Exception {
+		String expected = serializeXsl("no-doctype.xml");
+		String actual = serializeNative("no-doctype.xml");
+		
+		assertEquals(expected, actual);
+		assertTrue(actual.startsWith("<?xml"));
+		assertFalse(actual.contains("<!DOCTYPE"));
+	}
+	
+	private String serializeXsl(String name) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		Xslt30Transformer transformer = outputXsl.load30();
+		transformer.applyTemplates(getDocument(name), processor.newSerializer(baos));
+		return baos.toString(StandardCharsets.UTF_8.name());
+	}
+	
+	private String serializeNative(String name) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		TransformOutputSerializer.serialize(processor, getDocument(name), baos);
+		return baos.toString(StandardCharsets.UTF_8.name());
+	}
+	
+	private XdmNode getDocument(String name) throws Exception {
+		return processor.newDocumentBuilder().build(new StreamSource(getResource(GOLDEN + name)));
+	}
+	
+	private static InputStream getResource(String name) {
+		return TransformOutputSerializerTest.class.getClassLoader().getResourceAsStream(name);
+	}
+
+}
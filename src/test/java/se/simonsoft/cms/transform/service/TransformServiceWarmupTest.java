@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.impl.CmsItemIdArg;
+import se.simonsoft.cms.item.info.CmsItemLookup;
+import se.simonsoft.cms.item.properties.CmsItemProperties;
+import se.simonsoft.cms.transform.config.TransformConfiguration;
+import se.simonsoft.cms.transform.config.databind.TransformConfig;
+import se.simonsoft.cms.transform.config.databind.TransformConfigOptions;
+import se.simonsoft.cms.transform.event.TransformPathsMatcher;
+
+public class TransformServiceWarmupTest {
+	
+	private final CmsRepository repository = new CmsItemIdArg("x-svn:///svn/demo1^/").getRepository();
+	
+	private TransformConfiguration transformConfiguration;
+	private CmsItemLookup lookup;
+	private TransformService transformService;
+	private TransformServiceWarmup warmup;
+
+	@Before
+	public void setUp() {
+		transformConfiguration = mock(TransformConfiguration.class);
+		lookup = mock(CmsItemLookup.class);
+		transformService = mock(TransformService.class);
+		when(transformService.warmUp(any(CmsItemId.class), anyCollection())).thenReturn(1);
+		when(transformConfiguration.getConfigurationFolder(any(CmsItemId.class))).thenReturn(Collections.<String, TransformConfig>emptyMap());
+		when(lookup.getImmediateFolders(any(CmsItemId.class))).thenReturn(Collections.<CmsItemId>emptySet());
+		
+		CmsItemProperties properties = mock(CmsItemProperties.class);
+		when(properties.getString(TransformPathsMatcher.TRANSFORM_PATHS_WHITE_LIST)).thenReturn("/docs");
+		CmsItem repoItem = mock(CmsItem.class);
+		when(repoItem.getProperties()).thenReturn(properties);
+		when(lookup.getItem(repository.getItemId())).thenReturn(repoItem);
+		
+		warmup = new TransformServiceWarmup(transformConfiguration, 
+				Collections.singletonMap(repository, lookup), 
+				Collections.singletonMap(repository, transformService));
+	}
+	
+	@Test
+	public void testDepth() {
+		CmsItemId level1 = addFolders(getFolderId("/docs"), 1).iterator().next();
+		CmsItemId level2 = addFolders(level1, 1).iterator().next();
+		CmsItemId level3 = addFolders(level2, 1).iterator().next();
+		addConfig(level2, "/stylesheet/level2.xsl");
+		addConfig(level3, "/stylesheet/level3.xsl");
+		
+		assertEquals("Only the config within the depth", 1, warmup.warmUp(repository));
+		verify(transformConfiguration, times(1)).getConfigurationFolder(level2);
+		verify(transformConfiguration, never()).getConfigurationFolder(level3);
+		verify(lookup, never()).getImmediateFolders(level2);
+	}
+	
+	@Test
+	public void testCount() {
+		addFolders(getFolderId("/docs"), TransformServiceWarmup.FOLDER_COUNT_MAX + 10);
+		addConfig(getFolderId("/docs"), "/stylesheet/docs.xsl");
+		
+		assertEquals(1, warmup.warmUp(repository));
+		verify(transformConfiguration, times(TransformServiceWarmup.FOLDER_COUNT_MAX)).getConfigurationFolder(any(CmsItemId.class));
+	}
+	
+	private CmsItemId getFolderId(String path) {
+		return repository.getItemId(new CmsItemPath(path), null);
+	}
+	
+	private Set<CmsItemId> addFolders(CmsItemId parent, int count) {
+		Set<CmsItemId> folders = new LinkedHashSet<>();
+		for (int i = 0; i < count; i++) {
+			folders.add(getFolderId(parent.getRelPath().getPath() + "/folder" + i));
+		}
+		when(lookup.getImmediateFolders(parent)).thenReturn(folders);
+		return folders;
+	}
+	
+	private void addConfig(CmsItemId folderId, String stylesheet) {
+		TransformConfigOptions options = new TransformConfigOptions();
+		options.setType("xsl");
+		Map<String, String> params = new HashMap<>();
+		params.put("stylesheet", stylesheet);
+		options.setParams(params);
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		config.setOptions(options);
+		when(transformConfiguration.getConfigurationFolder(folderId)).thenReturn(Collections.singletonMap("config", config));
+	}
+
+}
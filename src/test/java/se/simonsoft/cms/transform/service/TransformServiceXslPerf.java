@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sf.saxon.s9api.Processor;
+import se.repos.testing.indexing.ReposTestIndexing;
+import se.simonsoft.cms.backend.filexml.FilexmlSourceClasspath;
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.CmsItemKind;
+import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.impl.CmsItemIdArg;
+import se.simonsoft.cms.item.info.CmsItemLookup;
+import se.simonsoft.cms.item.info.CmsRepositoryLookup;
+import se.simonsoft.cms.reporting.CmsItemLookupReporting;
+import se.simonsoft.cms.reporting.response.CmsItemReporting;
+import se.simonsoft.cms.transform.config.databind.TransformConfig;
+import se.simonsoft.cms.transform.config.databind.TransformConfigOptions;
+import se.simonsoft.cms.transform.lookup.CmsItemTransform;
+import se.simonsoft.cms.transform.testconfig.TestCorpusGenerator;
+import se.simonsoft.cms.transform.testconfig.TestFileXmlSetUp;
+import se.simonsoft.cms.xmlsource.handler.s9api.XmlSourceReaderS9api;
+import se.simonsoft.cms.xmlsource.transform.TransformerServiceFactory;
+
+/**
+ * Transform of a generated corpus, only executed by the 'perf' profile: mvn -Pperf test
+ * 
+ * Scale is configured with system properties, e.g. -Dperf.folders=1 -Dperf.files=10000 -Dperf.size=4096 -Dperf.sections=3 -Dperf.tikahtml=10
+ * Transform params are added with -Dperf.param.NAME=VALUE, e.g. -Dperf.param.parallelism=4
+ */
+public class TransformServiceXslPerf {
+	
+	private static final Logger logger = LoggerFactory.getLogger(TransformServiceXslPerf.class);
+	
+	private static final String PARAM_PREFIX = "perf.param.";
+	
+	private final int folders = Integer.getInteger("perf.folders", 1);
+	private final int files = Integer.getInteger("perf.files", 10000);
+	private final int size = Integer.getInteger("perf.size", 4096);
+	private final int sections = Integer.getInteger("perf.sections", 3);
+	private final int tikahtml = Integer.getInteger("perf.tikahtml", 10);
+	
+	private TestFileXmlSetUp testSetUp;
+	private ReposTestIndexing indexing;
+	private CmsRepository repo;
+	private TransformService transformService;
+	private final PerfMetrics metrics = new PerfMetrics();
+	
+	@Before
+	public void setup() throws Exception {
+		
+		String location = new TestCorpusGenerator(folders, files).setSize(size).setSections(sections).setTikahtml(tikahtml).generate("perf");
+		testSetUp = new TestFileXmlSetUp(new CmsRepository("http://localhost/svn/perf"), new FilexmlSourceClasspath(location));
+		repo = testSetUp.getRepo();
+		indexing = testSetUp.getIndexing();
+		
+		CmsItemLookup lookup = indexing.getContext().getInstance(CmsItemLookup.class);
+		transformService = new TransformServiceXsl(testSetUp.getCommit(), lookup, getLookupReporting(lookup),
+				indexing.getContext().getInstance(CmsRepositoryLookup.class),
+				indexing.getContext().getInstance(TransformerServiceFactory.class),
+				indexing.getContext().getInstance(XmlSourceReaderS9api.class),
+				indexing.getContext().getInstance(Processor.class), null, metrics);
+	}
+	
+	@After
+	public void tearDown() {
+		if (indexing != null) {
+			indexing.tearDown();
+		}
+	}
+	
+	@Test
+	public void testTransformCorpus() throws Exception {
+		
+		// Excluding the stylesheet compile from the measurement.
+		transformService.warmUp(repo.getItemId().withRelPath(new CmsItemPath("/doc")), Collections.singleton(getConfig(TestCorpusGenerator.getFolderName(0))));
+		
+		resetPeakHeap();
+		long start = System.nanoTime();
+		for (int f = 0; f < folders; f++) {
+			String folder = TestCorpusGenerator.getFolderName(f);
+			CmsItemId folderId = new CmsItemIdArg(repo, new CmsItemPath("/doc/" + folder));
+			long folderStart = System.nanoTime();
+			transformService.transform(folderId, getConfig(folder));
+			logger.info("Transformed folder {} in {} ms", folder, (System.nanoTime() - folderStart) / 1000000);
+		}
+		long elapsed = System.nanoTime() - start;
+		
+		double seconds = elapsed / 1e9;
+		long items = metrics.get(TransformMetrics.Counter.ITEMS);
+		long outputs = metrics.get(TransformMetrics.Counter.OUTPUTS);
+		logger.info("Transform perf: {} folders x ({} files + {} tikahtml), size {}, sections {}", folders, files, tikahtml, size, sections);
+		logger.info("Transform perf: {} items in {} s, {} items/s", items, String.format("%.2f", seconds), String.format("%.1f", items / seconds));
+		logger.info("Transform perf: {} outputs, {} outputs/s, {} MB", outputs, String.format("%.1f", outputs / seconds), metrics.get(TransformMetrics.Counter.BYTES) / (1024 * 1024));
+		logger.info("Transform perf: peak heap {} MB", getPeakHeap() / (1024 * 1024));
+		for (TransformMetrics.Phase phase: TransformMetrics.Phase.values()) {
+			if (metrics.getCount(phase) > 0) {
+				logger.info("Transform perf: {} {} ms ({} times)", phase, metrics.getTime(phase) / 1000000, metrics.getCount(phase));
+			}
+		}
+		
+		assertEquals("all items transformed", folders * (files + tikahtml), items);
+		assertEquals("no failures", 0, metrics.get(TransformMetrics.Counter.FAILURES));
+	}
+	
+	private TransformConfig getConfig(String folder) {
+		
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("stylesheet", TestCorpusGenerator.STYLESHEET);
+		params.put("output", "/transformed/" + folder);
+		params.put("overwrite", "true");
+		params.put("comment", "Perf transform");
+		for (String name: System.getProperties().stringPropertyNames()) {
+			if (name.startsWith(PARAM_PREFIX)) {
+				params.put(name.substring(PARAM_PREFIX.length()), System.getProperty(name));
+			}
+		}
+		
+		TransformConfigOptions options = new TransformConfigOptions();
+		options.setType("xsl");
+		options.setParams(params);
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		config.setName("perf");
+		config.setOptions(options);
+		return config;
+	}
+	
+	/**
+	 * The tf_tikahtml field is provided by indexing in the repository, generating the extracted XHTML here.
+	 */
+	private CmsItemLookupReporting getLookupReporting(CmsItemLookup lookup) {
+		
+		final Map<String, Object> meta = new HashMap<>();
+		meta.put(CmsItemTransform.FIELD, TestCorpusGenerator.getTikahtmlContents());
+		
+		CmsItemLookupReporting lookupReporting = mock(CmsItemLookupReporting.class);
+		when(lookupReporting.getItem(any(CmsItemId.class))).thenAnswer(invocation -> {
+			CmsItemId id = invocation.getArgument(0);
+			CmsItem item = lookup.getItem(id);
+			CmsItemReporting reporting = mock(CmsItemReporting.class);
+			when(reporting.getId()).thenReturn(id);
+			when(reporting.getKind()).thenReturn(CmsItemKind.File);
+			when(reporting.getRevisionChanged()).thenReturn(item.getRevisionChanged());
+			when(reporting.getProperties()).thenReturn(item.getProperties());
+			when(reporting.getMeta()).thenReturn(meta);
+			return reporting;
+		});
+		return lookupReporting;
+	}
+	
+	private static void resetPeakHeap() {
+		System.gc();
+		for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+	
+	private static long getPeakHeap() {
+		long result = 0;
+		for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				result += pool.getPeakUsage().getUsed();
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Totals across all repositories and configs.
+	 */
+	private static class PerfMetrics implements TransformMetrics, TransformMetrics.Recorder {
+		
+		private final Map<Phase, LongAdder> time = new EnumMap<>(Phase.class);
+		private final Map<Phase, LongAdder> timeCount = new EnumMap<>(Phase.class);
+		private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+		
+		private PerfMetrics() {
+			for (Phase phase: Phase.values()) {
+				time.put(phase, new LongAdder());
+				timeCount.put(phase, new LongAdder());
+			}
+			for (Counter counter: Counter.values()) {
+				counters.put(counter, new LongAdder());
+			}
+		}
+		
+		@Override
+		public Recorder getRecorder(CmsRepository repository, String config) {
+			return this;
+		}
+		
+		@Override
+		public void time(Phase phase, long nanos) {
+			time.get(phase).add(nanos);
+			timeCount.get(phase).increment();
+		}
+		
+		@Override
+		public void count(Counter counter, long delta) {
+			counters.get(counter).add(delta);
+		}
+		
+		long getTime(Phase phase) {
+			return time.get(phase).sum();
+		}
+		
+		long getCount(Phase phase) {
+			return timeCount.get(phase).sum();
+		}
+		
+		long get(Counter counter) {
+			return counters.get(counter).sum();
+		}
+	}
+}
@@ -23,14 +23,26 @@ import static org.junit.Assert.fail;
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import net.sf.saxon.s9api.Processor;
 import se.repos.testing.indexing.ReposTestIndexing;
 import se.simonsoft.cms.backend.filexml.FilexmlCommit;
 import se.simonsoft.cms.backend.filexml.FilexmlSourceClasspath;
@@ -38,8 +50,13 @@ import se.simonsoft.cms.item.CmsItem;
 import se.simonsoft.cms.item.CmsItemId;
 import se.simonsoft.cms.item.CmsItemPath;
 import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.RepoRevision;
+import se.simonsoft.cms.item.commit.CmsPatchItem;
+import se.simonsoft.cms.item.commit.CmsPatchset;
+import se.simonsoft.cms.item.commit.FolderExist;
 import se.simonsoft.cms.item.impl.CmsItemIdArg;
 import se.simonsoft.cms.item.info.CmsItemLookup;
+import se.simonsoft.cms.item.info.CmsItemNotFoundException;
 import se.simonsoft.cms.item.info.CmsRepositoryLookup;
 import se.simonsoft.cms.item.naming.CmsItemNameFactory;
 import se.simonsoft.cms.item.properties.CmsItemProperties;
@@ -83,12 +100,13 @@ public class TransformServiceXslTest {
 		repoLookup = indexing.getContext().getInstance(CmsRepositoryLookup.class);
 		TransformerServiceFactory transformerServiceFactory = indexing.getContext().getInstance(TransformerServiceFactory.class);
 		XmlSourceReaderS9api sourceReader = indexing.getContext().getInstance(XmlSourceReaderS9api.class);
+		Processor processor = indexing.getContext().getInstance(Processor.class);
 		//Map<CmsRepository, CmsItemLookup> lookupMap = new HashMap<>();
 		//lookupMap.put(repo, lookup);
 		//(CmsItemNameFactory nameFactory = new CmsItemNameFactory(lookupMap);
 		CmsItemNameFactory nameFactory = null;
 
-		transformService = new TransformServiceXsl(commit, lookup, lookupReporting, repoLookup, transformerServiceFactory, sourceReader, nameFactory); // may exist a injected version. 
+		transformService = new TransformServiceXsl(commit, lookup, lookupReporting, repoLookup, transformerServiceFactory, sourceReader, processor, nameFactory); // may exist a injected version. 
 	}
 	
 
@@ -284,6 +302,24 @@ public class TransformServiceXslTest {
 		
 	}
 
+	@Test
+	public void testCompleteMessageStringBounded() throws Exception {
+		TransformMessages messages = new TransformMessages(2000);
+		for (int i = 0; i < 10000; i++) {
+			messages.add("Transform multiple output " + i);
+		}
+		messages.add(" ");
+		assertTrue("retained within budget", messages.getMessages().size() < 100);
+		assertEquals(10000, messages.getMessages().size() + messages.getOverflow());
+		
+		String history = TransformServiceXsl.getCompleteMessageString("Automatic transform!", messages.getMessages(), messages.getOverflow());
+		assertTrue(history.startsWith("Automatic transform!\n\nTransform multiple output 0\n"));
+		assertTrue(history, history.length() < 2100);
+		// All messages are either included or counted.
+		int included = history.split("\n").length - 3;
+		assertTrue(history, history.endsWith("\n" + (10000 - included) + " more messages..."));
+	}
+	
 	@Test
 	public void testMultipleOutputFolderDefaultOverwriteTrue() throws Exception {
 		CmsItemId itemId = new CmsItemIdArg(transformTestDoc);
@@ -347,6 +383,49 @@ public class TransformServiceXslTest {
 		assertTrue(sec2Str.contains("name=\"section2.xml\""));
 	}
 
+	@Test
+	public void testMultipleOutputSpool() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc);
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-multiple-output.xsl");
+		optionsParams.put("output", "/transformed/multiple");
+		optionsParams.put("spool", "true");
+		optionsParams.put("comment", "Spooled transform!");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		transformService.transform(itemId, config);
+		
+		CmsItemId sec1Id = new CmsItemIdArg(repo, new CmsItemPath("/transformed/multiple/sections/section1.xml"));
+		CmsItem sec1Item = lookup.getItem(sec1Id);
+		assertEquals(itemId.getLogicalId(), sec1Item.getProperties().getString("abx:TransformBase"));
+		
+		ByteArrayOutputStream baos1 = new ByteArrayOutputStream();
+		sec1Item.getContents(baos1);
+
+		String sect1Str = baos1.toString(StandardCharsets.UTF_8.name());
+		assertTrue(sect1Str.contains("multiple-output=\"true\""));
+		assertTrue(sect1Str.contains("name=\"section1.xml\""));
+		assertTrue("Multiple output should have DOCTYPE decl", sect1Str.contains("DOCTYPE"));
+		assertTrue("Multiple output should have DOCTYPE decl", sect1Str.contains("MULTIPLE"));
+		assertFalse("Should clean up temporary doctype attrs", sect1Str.contains("cms:doctype-public"));
+		assertFalse("Should clean up temporary doctype attrs", sect1Str.contains("cms:doctype-system"));
+		
+		CmsItemId sec3Id = new CmsItemIdArg(repo, new CmsItemPath("/transformed/multiple/sections/földer space/folder encoded/section3.xml"));
+		CmsItem sec3Item = lookup.getItem(sec3Id);
+		ByteArrayOutputStream baos3 = new ByteArrayOutputStream();
+		sec3Item.getContents(baos3);
+		assertTrue(baos3.toString(StandardCharsets.UTF_8.name()).contains("name=\"földer space/folder%20encoded/section3.xml\""));
+	}
+
 	@Test
 	public void testMultipleOutputFolderDefaultOverwriteFalse() throws Exception {
 		CmsItemId itemId = new CmsItemIdArg(transformTestDoc);
@@ -425,6 +504,37 @@ public class TransformServiceXslTest {
 		assertTrue(sec2Str.contains("name=\"section2.xml\""));
 	}
 	
+	@Test
+	public void testMultipleOutputAllItemsExistsLateLock() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc);
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-multiple-output.xsl");
+		optionsParams.put("output", "/transformed/multiple/existing");
+		optionsParams.put("overwrite", "true");
+		optionsParams.put("latelock", "true");
+		optionsParams.put("comment", "Automatic transform!");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		transformService.transform(itemId, config);
+		
+		for (String name: new String[] {"section1.xml", "section2.xml"}) {
+			CmsItem secItem = lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/multiple/existing/sections/" + name)));
+			assertEquals(2L, secItem.getRevisionChanged().getNumber());
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			secItem.getContents(baos);
+			assertTrue(baos.toString(StandardCharsets.UTF_8.name()).contains("name=\"" + name + "\""));
+		}
+	}
+	
 	@Test
 	public void testOutputWithEncodedHref() throws Exception {
 		CmsItemId itemId = new CmsItemIdArg(transformTestDoc);
@@ -459,6 +569,451 @@ public class TransformServiceXslTest {
 		assertTrue(sec3Str.contains("name=\"földer space/folder%20encoded/section3.xml\""));
 	}
 
+	@Test
+	public void testToHex() {
+		assertEquals("", TransformServiceXsl.toHex(new byte[0]));
+		assertEquals("000fa0ff", TransformServiceXsl.toHex(new byte[] {0x00, 0x0f, (byte) 0xa0, (byte) 0xff}));
+	}
+	
+	@Test
+	public void testAddFolderExistsNested() throws Exception {
+		CmsPatchset patchset = new CmsPatchset(repo, new RepoRevision(1, null));
+		Set<String> folders = new HashSet<>();
+		CmsItemPath output = new CmsItemPath("/transformed/multiple");
+		
+		TransformServiceXsl.addFolderExists(patchset, folders, output, new CmsItemPath("/transformed/multiple/sections/a/b"));
+		TransformServiceXsl.addFolderExists(patchset, folders, output, new CmsItemPath("/transformed/multiple/sections/a/c"));
+		TransformServiceXsl.addFolderExists(patchset, folders, output, new CmsItemPath("/transformed/multiple/sections"));
+		TransformServiceXsl.addFolderExists(patchset, folders, output, output);
+		
+		List<String> paths = new ArrayList<>();
+		for (CmsPatchItem item: patchset) {
+			assertTrue(item instanceof FolderExist);
+			paths.add(item.getPath().getPath());
+		}
+		assertEquals("each folder once, parents before children, not above the output folder", Arrays.asList(
+				"/transformed/multiple",
+				"/transformed/multiple/sections",
+				"/transformed/multiple/sections/a",
+				"/transformed/multiple/sections/a/b",
+				"/transformed/multiple/sections/a/c"), paths);
+		assertEquals(5, folders.size());
+		
+		try {
+			TransformServiceXsl.addFolderExists(patchset, folders, output, new CmsItemPath("/transformed/other"));
+			fail("Should fail, outside of the output folder.");
+		} catch (IllegalArgumentException e) {
+			
+		}
+	}
+
+	@Test
+	public void testFolderParallel() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/repo1/topics");
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-single-output.xsl");
+		optionsParams.put("output", "/transformed/single");
+		optionsParams.put("parallelism", "2");
+		optionsParams.put("comment", "Parallel transform!");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		transformService.transform(itemId, config);
+		
+		for (int i = 1; i <= 3; i++) {
+			CmsItemId itemIdNew = new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic" + i + ".xml"));
+			CmsItem itemNew = lookup.getItem(itemIdNew);
+			assertEquals("All items in a single commit", 2L, itemNew.getRevisionChanged().getNumber());
+			assertEquals("x-svn:///svn/repo1/topics/topic" + i + ".xml", itemNew.getProperties().getString("abx:TransformBase"));
+			
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			itemNew.getContents(baos);
+			String string = baos.toString(StandardCharsets.UTF_8.name());
+			assertTrue(string.contains("single-output=\"true\""));
+			assertTrue(string.contains("Topic number " + i));
+		}
+		
+		CmsItemProperties revisionProperties = commit.getCmsContentsReader().getRevisionProperties(lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic1.xml"))).getRevisionChanged());
+		String history = revisionProperties.getString("svn:log");
+		assertTrue(history.startsWith("Parallel transform!"));
+		assertTrue(history.contains("Transform single output"));
+	}
+
+	@Test
+	public void testItemsParallelFailureUnlocks() throws Exception {
+		// The first item overwrites existing outputs (locked), the second item does not exist.
+		List<CmsItemId> items = Arrays.asList(
+				new CmsItemIdArg(transformTestDoc),
+				new CmsItemIdArg("x-svn:///svn/repo1/doc/transform-missing.xml"));
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-multiple-output.xsl");
+		optionsParams.put("output", "/transformed/multiple/existing");
+		optionsParams.put("overwrite", "true");
+		optionsParams.put("parallelism", "2");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		try {
+			transformService.transform(items, config);
+			fail("Should fail on the missing item.");
+		} catch (RuntimeException e) {
+
+		}
+		assertEquals("Nothing commited", 1L, repoLookup.getYoungest(repo).getNumber());
+
+		// Fails to lock if the existing outputs were left locked by the failed transform.
+		transformService.transform(items.subList(0, 1), config);
+		assertEquals(2L, repoLookup.getYoungest(repo).getNumber());
+		assertEquals(2L, lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/multiple/existing/sections/section1.xml"))).getRevisionChanged().getNumber());
+	}
+
+	@Test
+	public void testItemsList() throws Exception {
+		List<CmsItemId> items = Arrays.asList(
+				new CmsItemIdArg("x-svn:///svn/repo1/topics/topic1.xml"),
+				new CmsItemIdArg("x-svn:///svn/repo1/topics/topic3.xml"));
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-single-output.xsl");
+		optionsParams.put("output", "/transformed/single");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		transformService.transform(items, config);
+		
+		for (int i: new int[] {1, 3}) {
+			CmsItem itemNew = lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic" + i + ".xml")));
+			assertEquals("All items in a single commit", 2L, itemNew.getRevisionChanged().getNumber());
+			assertEquals("x-svn:///svn/repo1/topics/topic" + i + ".xml", itemNew.getProperties().getString("abx:TransformBase"));
+		}
+		
+		try {
+			lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic2.xml")));
+			fail("Only the listed items should be transformed");
+		} catch (CmsItemNotFoundException e) {
+			
+		}
+	}
+	
+	@Test
+	public void testFolderChunked() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/repo1/topics");
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-single-output.xsl");
+		optionsParams.put("output", "/transformed/single");
+		optionsParams.put("chunkitems", "2");
+		optionsParams.put("comment", "Chunked transform!");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		transformService.transform(itemId, config);
+		
+		long[] expectedRev = new long[] {2L, 2L, 3L};
+		for (int i = 1; i <= 3; i++) {
+			CmsItem itemNew = lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic" + i + ".xml")));
+			assertEquals("Commit per chunk", expectedRev[i - 1], itemNew.getRevisionChanged().getNumber());
+			assertEquals("x-svn:///svn/repo1/topics/topic" + i + ".xml", itemNew.getProperties().getString("abx:TransformBase"));
+		}
+		
+		CmsItemProperties revisionProperties = commit.getCmsContentsReader().getRevisionProperties(lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic3.xml"))).getRevisionChanged());
+		String history = revisionProperties.getString("svn:log");
+		assertTrue(history.startsWith("Chunked transform! (chunk 2/2)"));
+	}
+	
+	@Test
+	public void testFolderSkipUnchanged() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/repo1/topics");
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-single-output.xsl");
+		optionsParams.put("output", "/transformed/single");
+		optionsParams.put("overwrite", "true");
+		optionsParams.put("skipunchanged", "true");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		transformService.transform(itemId, config);
+		assertEquals(2L, repoLookup.getYoungest(repo).getNumber());
+		
+		// Identical output, nothing to commit.
+		transformService.transform(itemId, config);
+		assertEquals("No commit when all outputs are unchanged", 2L, repoLookup.getYoungest(repo).getNumber());
+		
+		// Without the option, the same output is commited again.
+		optionsParams.remove("skipunchanged");
+		transformService.transform(itemId, config);
+		assertEquals(3L, repoLookup.getYoungest(repo).getNumber());
+	}
+	
+	@Test
+	public void testFolderIncremental() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/repo1/topics");
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		config.setName("incremental");
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-single-output.xsl");
+		optionsParams.put("output", "/transformed/single");
+		optionsParams.put("overwrite", "true");
+		optionsParams.put("incremental", "true");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		transformService.transform(itemId, config);
+		assertEquals(2L, repoLookup.getYoungest(repo).getNumber());
+		
+		CmsItem itemNew = lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic1.xml")));
+		assertEquals("1", itemNew.getProperties().getString("abx:TransformBaseRevision"));
+		assertEquals("1", itemNew.getProperties().getString("abx:TransformStylesheetRevision"));
+		
+		// All outputs are current.
+		transformService.transform(itemId, config);
+		assertEquals("No commit when all outputs are current", 2L, repoLookup.getYoungest(repo).getNumber());
+		
+		// Another config name is not current.
+		config.setName("other");
+		transformService.transform(itemId, config);
+		assertEquals(3L, repoLookup.getYoungest(repo).getNumber());
+	}
+
+	@Test
+	public void testFolderIncrementalSkipUnchanged() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/repo1/topics");
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		config.setName("incremental");
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-single-output.xsl");
+		optionsParams.put("output", "/transformed/single");
+		optionsParams.put("overwrite", "true");
+		optionsParams.put("skipunchanged", "true");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		// Outputs without the incremental properties.
+		transformService.transform(itemId, config);
+		assertEquals(2L, repoLookup.getYoungest(repo).getNumber());
+		assertEquals(null, lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic1.xml"))).getProperties().getString("abx:TransformBaseRevision"));
+
+		// Identical content but outdated properties, commited as property change.
+		optionsParams.put("incremental", "true");
+		transformService.transform(itemId, config);
+		assertEquals(3L, repoLookup.getYoungest(repo).getNumber());
+		CmsItem itemNew = lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic1.xml")));
+		assertEquals(3L, itemNew.getRevisionChanged().getNumber());
+		assertEquals("1", itemNew.getProperties().getString("abx:TransformBaseRevision"));
+
+		// All outputs are current.
+		transformService.transform(itemId, config);
+		assertEquals("No commit when all outputs are current", 3L, repoLookup.getYoungest(repo).getNumber());
+	}
+	
+	@Test
+	public void testFolderPreflight() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/repo1/topics");
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-single-output.xsl");
+		optionsParams.put("output", "/transformed/single");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		transformService.transform(new CmsItemIdArg("x-svn:///svn/repo1/topics/topic2.xml"), config);
+		assertEquals(2L, repoLookup.getYoungest(repo).getNumber());
+		
+		optionsParams.put("preflight", "fail");
+		try {
+			transformService.transform(itemId, config);
+			fail("Should fail before transforming, item already exist but overwrite is not set.");
+		} catch (IllegalStateException e) {
+			assertEquals("Item already exists, config prohibiting overwrite of existing items: /transformed/single/topic2.xml", e.getMessage());
+		}
+		assertEquals(2L, repoLookup.getYoungest(repo).getNumber());
+		
+		optionsParams.put("preflight", "skip");
+		transformService.transform(itemId, config);
+		assertEquals(3L, repoLookup.getYoungest(repo).getNumber());
+		assertEquals(3L, lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic1.xml"))).getRevisionChanged().getNumber());
+		assertEquals("Skipped", 2L, lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic2.xml"))).getRevisionChanged().getNumber());
+	}
+	
+	@Test
+	public void testMetricsJmx() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc);
+		
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		TransformService service = new TransformServiceXsl(commit, lookup, lookupReporting, repoLookup,
+				indexing.getContext().getInstance(TransformerServiceFactory.class),
+				indexing.getContext().getInstance(XmlSourceReaderS9api.class),
+				indexing.getContext().getInstance(Processor.class), null, new TransformMetricsJmx(server));
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		config.setName("multiple");
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-multiple-output.xsl");
+		optionsParams.put("output", "/transformed/multiple/existing");
+		optionsParams.put("overwrite", "true");
+		configOptions.setParams(optionsParams);
+		config.setOptions(configOptions);
+
+		service.transform(itemId, config);
+		
+		ObjectName name = new ObjectName("se.simonsoft.cms.transform:type=TransformMetrics,repository=" + ObjectName.quote(repo.getName()) + ",config=" + ObjectName.quote("multiple"));
+		TransformMetricsMXBean bean = JMX.newMXBeanProxy(server, name, TransformMetricsMXBean.class);
+		assertEquals("multiple", bean.getConfig());
+		Map<String, Long> counters = bean.getCounters();
+		assertEquals(Long.valueOf(1), counters.get("ITEMS"));
+		assertEquals("Principal output and 3 sections", Long.valueOf(4), counters.get("OUTPUTS"));
+		assertEquals("Only the principal output exists", Long.valueOf(1), counters.get("LOCKS"));
+		assertTrue(counters.get("BYTES") > 0);
+		assertEquals(Long.valueOf(1), bean.getTimeCount().get("COMMIT"));
+		assertEquals(Long.valueOf(3), bean.getTimeCount().get("SERIALIZE"));
+	}
+	
+	@Test
+	public void testInjectedWithoutProcessor() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc);
+		
+		// The injected constructor does not require a Processor binding.
+		TransformService service = new TransformServiceXsl(commit, lookup, lookupReporting, repoLookup,
+				indexing.getContext().getInstance(TransformerServiceFactory.class),
+				indexing.getContext().getInstance(XmlSourceReaderS9api.class), null);
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		config.setName("multiple");
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-multiple-output.xsl");
+		optionsParams.put("output", "/transformed/multiple/existing");
+		optionsParams.put("overwrite", "true");
+		optionsParams.put("serializer", "native");
+		configOptions.setParams(optionsParams);
+		config.setOptions(configOptions);
+
+		service.transform(itemId, config);
+		
+		CmsItem itemNew = lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/multiple/existing/sections/section1.xml")));
+		assertEquals("Result document serialized by the default Processor", 2L, itemNew.getRevisionChanged().getNumber());
+	}
+	
+	@Test
+	public void testFolderChunkedInvalid() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/repo1/topics");
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-single-output.xsl");
+		optionsParams.put("output", "/transformed/single");
+		optionsParams.put("chunkbytes", "0");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		try {
+			transformService.transform(itemId, config);
+			fail("Should fail, invalid chunk size.");
+		} catch (IllegalArgumentException e) {
+			assertEquals("The 'chunkbytes' parameter must be a positive integer: 0", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testFolderParallelInvalid() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/repo1/topics");
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-single-output.xsl");
+		optionsParams.put("output", "/transformed/single");
+		optionsParams.put("parallelism", "0");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		try {
+			transformService.transform(itemId, config);
+			fail("Should fail, parallelism must be positive.");
+		} catch (IllegalArgumentException e) {
+			assertEquals("The 'parallelism' parameter must be a positive integer: 0", e.getMessage());
+		}
+	}
+
 	@Test
 	public void testTransformerServiceCmsBuiltIn() throws Exception {
 		
@@ -503,6 +1058,113 @@ public class TransformServiceXslTest {
 	}
 
 
+	@Test
+	public void testStreamingRequiresSaxonEE() throws Exception {
+		Processor processor = indexing.getContext().getInstance(Processor.class);
+		Assume.assumeFalse("EE".equals(processor.getSaxonEdition()));
+		
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc);
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-multiple-output.xsl");
+		optionsParams.put("output", "/transformed/multiple");
+		optionsParams.put("overwrite", "true");
+		optionsParams.put("streaming", "true");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		try {
+			transformService.transform(itemId, config);
+			fail("Should fail, streaming requires Saxon-EE.");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("requires Saxon-EE"));
+		}
+	}
+
+	@Test
+	public void testStreamingSaxonEE() throws Exception {
+		Processor processor = indexing.getContext().getInstance(Processor.class);
+		Assume.assumeTrue("Streaming requires Saxon-EE", "EE".equals(processor.getSaxonEdition()));
+
+		CmsItemId itemId = new CmsItemIdArg("x-svn:///svn/repo1/topics/topic1.xml");
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		// Includes a stylesheet relative to the repository path.
+		optionsParams.put("stylesheet", "/stylesheet/transform-streaming.xsl");
+		optionsParams.put("output", "/transformed/single");
+		optionsParams.put("streaming", "true");
+		optionsParams.put("comment", "Streaming transform!");
+		configOptions.setParams(optionsParams);
+
+		config.setOptions(configOptions);
+
+		transformService.transform(itemId, config);
+
+		CmsItem itemNew = lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/single/topic1.xml")));
+		assertEquals(2L, itemNew.getRevisionChanged().getNumber());
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		itemNew.getContents(baos);
+		String string = baos.toString(StandardCharsets.UTF_8.name());
+		assertTrue(string.contains("streaming-output=\"true\""));
+		assertTrue(string.contains("Topic number 1"));
+
+		CmsItemProperties revisionProperties = commit.getCmsContentsReader().getRevisionProperties(itemNew.getRevisionChanged());
+		assertTrue(revisionProperties.getString("svn:log").contains("Transform streaming output"));
+
+		// Compiled once, pinned in the same way as other stylesheets.
+		assertTrue(((TransformServiceXsl) transformService).evictStylesheet("x-svn:///svn/repo1/stylesheet/transform-streaming.xsl"));
+	}
+	
+	@Test
+	public void testWarmUp() throws Exception {
+		CmsItemId itemId = new CmsItemIdArg(transformTestDoc);
+
+		TransformConfig config = new TransformConfig();
+		config.setActive(true);
+		config.setName("multiple");
+
+		TransformConfigOptions configOptions = new TransformConfigOptions();
+		configOptions.setType("xsl");
+
+		Map<String, String> optionsParams = new HashMap<String, String>();
+		optionsParams.put("stylesheet", "/stylesheet/transform-multiple-output.xsl");
+		optionsParams.put("output", "/transformed/multiple");
+		configOptions.setParams(optionsParams);
+		config.setOptions(configOptions);
+		
+		TransformConfig inactive = new TransformConfig();
+		inactive.setActive(false);
+		inactive.setName("inactive");
+		inactive.setOptions(configOptions);
+		
+		TransformConfig missing = new TransformConfig();
+		missing.setActive(true);
+		missing.setName("missing");
+		TransformConfigOptions missingOptions = new TransformConfigOptions();
+		missingOptions.setType("xsl");
+		missingOptions.getParams().put("stylesheet", "/non/existing.xsl");
+		missing.setOptions(missingOptions);
+		
+		assertEquals("Only the active and existing stylesheet", 1, transformService.warmUp(itemId, Arrays.asList(config, inactive, missing)));
+		
+		transformService.transform(itemId, config);
+		CmsItem sec1Item = lookup.getItem(new CmsItemIdArg(repo, new CmsItemPath("/transformed/multiple/sections/section1.xml")));
+		assertEquals(itemId.getLogicalId(), sec1Item.getProperties().getString("abx:TransformBase"));
+	}
+
 	@Test
 	public void testInvalidConfig() throws Exception {
 		
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.sf.saxon.s9api.Processor;
+
+public class TransformStreamingTest {
+	
+	private static Processor processor;
+	private static TransformStreaming streaming;
+	
+	@BeforeClass
+	public static void setUpClass() {
+		processor = new Processor(false);
+		streaming = new TransformStreaming(processor, null);
+	}
+	
+	@Test
+	public void testValidateProcessor() {
+		Assume.assumeTrue("Saxon-EE can stream", !"EE".equals(processor.getSaxonEdition()));
+		try {
+			streaming.validateProcessor();
+			fail("Streaming requires Saxon-EE");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("requires Saxon-EE"));
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import se.simonsoft.cms.xmlsource.transform.TransformerService;
+
+public class TransformStylesheetCacheTest {
+
+	@Test
+	public void testConcurrentCompileOnce() throws Exception {
+		
+		final TransformStylesheetCache<TransformerService> cache = new TransformStylesheetCache<>();
+		final TransformerService service = mock(TransformerService.class);
+		final AtomicInteger builds = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<TransformerService>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return cache.get("/stylesheet/a.xsl", 1L, () -> {
+						builds.incrementAndGet();
+						return service;
+					});
+				}));
+			}
+			start.countDown();
+			for (Future<TransformerService> f: futures) {
+				assertSame(service, f.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals("Compiled once", 1, builds.get());
+		assertEquals(1, cache.getCompiles());
+		assertEquals(3, cache.getHits());
+	}
+	
+	@Test
+	public void testRevisionChangedAndFailure() {
+		
+		TransformStylesheetCache<TransformerService> cache = new TransformStylesheetCache<>();
+		TransformerService rev1 = mock(TransformerService.class);
+		TransformerService rev2 = mock(TransformerService.class);
+		assertSame(rev1, cache.get("/stylesheet/a.xsl", 1L, () -> rev1));
+		assertSame(rev1, cache.get("/stylesheet/a.xsl", 1L, () -> rev2));
+		assertSame(rev2, cache.get("/stylesheet/a.xsl", 2L, () -> rev2));
+		
+		try {
+			cache.get("/stylesheet/b.xsl", 1L, () -> { throw new IllegalArgumentException("invalid"); });
+		} catch (IllegalArgumentException e) {
+			
+		}
+		assertEquals("Failed compile is not pinned", 1, cache.size());
+		assertSame(rev1, cache.get("/stylesheet/b.xsl", 1L, () -> rev1));
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import se.simonsoft.cms.item.CmsItem;
+import se.simonsoft.cms.item.CmsItemId;
+import se.simonsoft.cms.item.CmsItemPath;
+import se.simonsoft.cms.item.CmsRepository;
+import se.simonsoft.cms.item.RepoRevision;
+import se.simonsoft.cms.item.impl.CmsItemIdArg;
+import se.simonsoft.cms.item.info.CmsItemLookup;
+
+public class TransformStylesheetModulesTest {
+	
+	private static final String XSL_START = "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"3.0\">";
+	private static final String XSL_END = "</xsl:stylesheet>";
+	
+	private final CmsRepository repository = new CmsItemIdArg("x-svn:///svn/repo1^/stylesheet/main.xsl").getRepository();
+	private CmsItemLookup itemLookup;
+	private CmsItem main;
+
+	@Before
+	public void setUp() {
+		itemLookup = mock(CmsItemLookup.class);
+		main = addItem("/stylesheet/main.xsl", 3, XSL_START
+				+ "<xsl:include href=\"include.xsl\"/>"
+				+ "<xsl:import href=\"http://www.example.com/builtin.xsl\"/>"
+				+ XSL_END);
+		addItem("/stylesheet/include.xsl", 5, XSL_START
+				+ "<xsl:import href=\"../common/common.xsl\"/>"
+				+ "<xsl:include href=\"main.xsl\"/>"
+				+ XSL_END);
+		addItem("/common/common.xsl", 4, XSL_START + XSL_END);
+	}
+	
+	@Test
+	public void testModuleIds() {
+		TransformStylesheetModules modules = new TransformStylesheetModules(itemLookup);
+		assertEquals(1, modules.getModuleIds(main).size());
+		assertEquals("/stylesheet/include.xsl", modules.getModuleIds(main).get(0).getRelPath().getPath());
+	}
+	
+	@Test
+	public void testRevision() {
+		TransformStylesheetModules modules = new TransformStylesheetModules(itemLookup);
+		assertEquals("highest revision of the module closure", 5, modules.getRevision(main));
+		assertEquals(5, modules.getRevision(main));
+		
+		addItem("/common/common.xsl", 7, XSL_START + XSL_END);
+		assertEquals("changed imported module", 7, modules.getRevision(main));
+	}
+	
+	private CmsItem addItem(String path, long revision, String content) {
+		CmsItemId itemId = repository.getItemId(new CmsItemPath(path), null);
+		CmsItem item = mock(CmsItem.class);
+		when(item.getId()).thenReturn(itemId);
+		when(item.getRevisionChanged()).thenReturn(new RepoRevision(revision, null));
+		doAnswer(invocation -> {
+			((OutputStream) invocation.getArguments()[0]).write(content.getBytes(StandardCharsets.UTF_8));
+			return null;
+		}).when(item).getContents(any(OutputStream.class));
+		when(itemLookup.getItem(itemId)).thenReturn(item);
+		return item;
+	}
+
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2009-2017 Simonsoft Nordic AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.simonsoft.cms.transform.testconfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates filexml repositories with synthetic content, written to the test classpath for use with FilexmlSourceClasspath.
+ * 
+ * Layout:
+ * /doc/folderNNN/docNNNNN.xml - XML documents with sections, producing one result document per section (sections/docNNNNN-sectionN.xml).
+ * /doc/folderNNN/extractNNNNN.pdf - items with cms:class tikahtml, contents from {@link #getTikahtmlContents()} via reporting.
+ * /transformed/folderNNN - output folder per doc folder.
+ * /stylesheet/transform-multiple-output.xsl
+ */
+public class TestCorpusGenerator {
+	
+	public static final String STYLESHEET = "/stylesheet/transform-multiple-output.xsl";
+	
+	private static final String DATASETS = "se/simonsoft/cms/transform/datasets";
+	private static final String STYLESHEET_SOURCE = DATASETS + "/repo1" + STYLESHEET;
+	
+	private static final Logger logger = LoggerFactory.getLogger(TestCorpusGenerator.class);
+	
+	private final int folders;
+	private final int files;
+	private int size = 4096;
+	private int sections = 3;
+	private int tikahtml = 0;
+	
+	/**
+	 * @param folders number of folders below /doc
+	 * @param files number of XML files per folder
+	 */
+	public TestCorpusGenerator(int folders, int files) {
+		if (folders < 1 || files < 0) {
+			throw new IllegalArgumentException("Corpus requires at least one folder: " + folders + " x " + files);
+		}
+		this.folders = folders;
+		this.files = files;
+	}
+	
+	/**
+	 * @param size approximate size in bytes of each XML file
+	 */
+	public TestCorpusGenerator setSize(int size) {
+		this.size = size;
+		return this;
+	}
+	
+	/**
+	 * @param sections number of result documents per XML file
+	 */
+	public TestCorpusGenerator setSections(int sections) {
+		this.sections = sections;
+		return this;
+	}
+	
+	/**
+	 * @param tikahtml number of tikahtml items per folder
+	 */
+	public TestCorpusGenerator setTikahtml(int tikahtml) {
+		this.tikahtml = tikahtml;
+		return this;
+	}
+	
+	public static String getFolderName(int folder) {
+		return String.format("folder%03d", folder);
+	}
+	
+	/**
+	 * @return the extracted XHTML of all tikahtml items, normally provided by the tf_tikahtml field in reporting
+	 */
+	public static String getTikahtmlContents() {
+		return "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>Extracted</title></head><body><p>Extracted content.</p></body></html>";
+	}
+	
+	/**
+	 * Replaces any existing repository with the same name.
+	 * @param name of the repository
+	 * @return classpath location of the repository
+	 */
+	public String generate(String name) throws IOException {
+		
+		final String location = DATASETS + "/" + name;
+		final Path root = getClasspathRoot().resolve(location);
+		delete(root);
+		Files.createDirectories(root);
+		
+		long start = System.currentTimeMillis();
+		try (Writer repository = Files.newBufferedWriter(root.resolve("repository.xml"), StandardCharsets.UTF_8)) {
+			repository.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<lists>\n<list>\n");
+			writeFolder(repository, ".", "\t\t\t<property name=\"cmsconfig:TransformPaths\">/doc</property>\n");
+			writeFolder(repository, "doc", null);
+			writeFolder(repository, "transformed", null);
+			writeFolder(repository, "stylesheet", null);
+			
+			Path stylesheet = root.resolve(STYLESHEET.substring(1));
+			Files.createDirectories(stylesheet.getParent());
+			try (InputStream in = getClass().getClassLoader().getResourceAsStream(STYLESHEET_SOURCE)) {
+				Files.copy(in, stylesheet);
+			}
+			writeFile(repository, STYLESHEET.substring(1), Files.size(stylesheet), null);
+			
+			for (int f = 0; f < folders; f++) {
+				final String folder = getFolderName(f);
+				writeFolder(repository, "doc/" + folder, null);
+				writeFolder(repository, "transformed/" + folder, null);
+				Files.createDirectories(root.resolve("transformed").resolve(folder));
+				
+				Path docFolder = root.resolve("doc").resolve(folder);
+				Files.createDirectories(docFolder);
+				for (int i = 0; i < files; i++) {
+					String fileName = String.format("doc%05d.xml", i);
+					byte[] content = getDocument(folder, String.format("doc%05d", i)).getBytes(StandardCharsets.UTF_8);
+					Files.write(docFolder.resolve(fileName), content);
+					writeFile(repository, "doc/" + folder + "/" + fileName, content.length, null);
+				}
+				for (int i = 0; i < tikahtml; i++) {
+					String fileName = String.format("extract%05d.pdf", i);
+					// Binary placeholder, the transform reads the extracted XHTML.
+					byte[] content = "%PDF-1.4\n".getBytes(StandardCharsets.US_ASCII);
+					Files.write(docFolder.resolve(fileName), content);
+					writeFile(repository, "doc/" + folder + "/" + fileName, content.length, "\t\t\t<property name=\"cms:class\">tikahtml</property>\n");
+				}
+			}
+			repository.write("</list>\n</lists>\n");
+		}
+		logger.info("Generated corpus {} ({} x {} files, {} tikahtml per folder) in {} ms", location, folders, files, tikahtml, System.currentTimeMillis() - start);
+		return location;
+	}
+	
+	/**
+	 * @param name unique within the folder, result documents from all files are written to the same output folder
+	 */
+	private String getDocument(String folder, String name) {
+		
+		StringBuilder sb = new StringBuilder(size + 256);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<document xml:lang=\"en-GB\">\n\t<title>").append(folder).append('/').append(name).append("</title>\n\t<body>\n");
+		final int count = Math.max(sections, 1);
+		final int sectionSize = size / count;
+		for (int s = 0; s < count; s++) {
+			int end = sb.length() + sectionSize;
+			if (sections > 0) {
+				sb.append("\t\t<section name=\"").append(name).append("-section").append(s + 1).append(".xml\">\n");
+			} else {
+				// Not matched by the stylesheet, principal output only.
+				sb.append("\t\t<chapter>\n");
+			}
+			sb.append("\t\t\t<title>Section ").append(s + 1).append("</title>\n");
+			int p = 1;
+			do {
+				sb.append("\t\t\t<p>Paragraph ").append(p++).append(" with some text, åäö and €.</p>\n");
+			} while (sb.length() < end);
+			sb.append((sections > 0) ? "\t\t</section>\n" : "\t\t</chapter>\n");
+		}
+		sb.append("\t</body>\n</document>\n");
+		return sb.toString();
+	}
+	
+	private void writeFolder(Writer repository, String name, String properties) throws IOException {
+		repository.write("\t<entry kind=\"dir\">\n");
+		writeEntry(repository, name, properties);
+	}
+	
+	private void writeFile(Writer repository, String name, long size, String properties) throws IOException {
+		repository.write("\t<entry kind=\"file\">\n");
+		repository.write("\t\t<size>" + size + "</size>\n");
+		writeEntry(repository, name, properties);
+	}
+	
+	private void writeEntry(Writer repository, String name, String properties) throws IOException {
+		repository.write("\t\t<name>" + name + "</name>\n");
+		repository.write("\t\t<commit revision=\"1\">\n\t\t\t<author>test</author>\n\t\t\t<date>2012-10-03T03:53:54.616837Z</date>\n\t\t</commit>\n");
+		if (properties != null) {
+			repository.write("\t\t<properties>\n" + properties + "\t\t</properties>\n");
+		} else {
+			repository.write("\t\t<properties />\n");
+		}
+		repository.write("\t</entry>\n");
+	}
+	
+	private Path getClasspathRoot() {
+		// The existing dataset locates the test classpath folder (target/test-classes).
+		URL url = getClass().getClassLoader().getResource(STYLESHEET_SOURCE);
+		if (url == null || !"file".equals(url.getProtocol())) {
+			throw new IllegalStateException("Corpus requires the test classpath in a folder: " + url);
+		}
+		try {
+			Path path = Paths.get(url.toURI());
+			for (String segment: STYLESHEET_SOURCE.split("/")) {
+				if (!segment.isEmpty()) {
+					path = path.getParent();
+				}
+			}
+			return path;
+		} catch (URISyntaxException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static void delete(Path root) throws IOException {
+		if (!Files.exists(root)) {
+			return;
+		}
+		try (Stream<Path> walk = Files.walk(root)) {
+			walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+}